@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.collections;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks dispatching events through a {@link ListenerList}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ListenerListBenchmark {
+
+    /** The number of listeners to register. */
+    @Param({"0", "1", "10"})
+    public int listeners;
+
+    private ListenerList list;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        list = new ListenerList();
+        for (int i = 0; i < listeners; i++) {
+            list.add(ListObserver.class, new ConsumingObserver(blackhole));
+        }
+    }
+
+    @Benchmark
+    public void getCallable() {
+        list.getCallable(ListObserver.class).onItemsAdded(this, 1, 2);
+    }
+
+    @Benchmark
+    public void getCallableCached() {
+        final ListObserver callable = list.getCallable(ListObserver.class);
+        callable.onItemsAdded(this, 1, 2);
+        callable.onItemsRemoved(this, 1, 2);
+        callable.onItemsChanged(this, 1, 2);
+    }
+
+    /**
+     * Observer which feeds all events into a {@link Blackhole}.
+     */
+    private static class ConsumingObserver implements ListObserver {
+
+        private final Blackhole blackhole;
+
+        ConsumingObserver(final Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void onItemsAdded(final Object source, final int startIndex, final int endIndex) {
+            blackhole.consume(startIndex);
+        }
+
+        @Override
+        public void onItemsRemoved(final Object source, final int startIndex, final int endIndex) {
+            blackhole.consume(startIndex);
+        }
+
+        @Override
+        public void onItemsChanged(final Object source, final int startIndex, final int endIndex) {
+            blackhole.consume(startIndex);
+        }
+
+    }
+
+}
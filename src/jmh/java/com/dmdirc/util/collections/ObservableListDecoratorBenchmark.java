@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.collections;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks mutating an {@link ObservableListDecorator} with listeners attached.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ObservableListDecoratorBenchmark {
+
+    /** The number of observers to register. */
+    @Param({"0", "1", "10"})
+    public int observers;
+
+    private ObservableListDecorator<String> list;
+
+    @Setup
+    public void setUp() {
+        list = new ObservableListDecorator<>(new ArrayList<>());
+        for (int i = 0; i < observers; i++) {
+            list.addListListener(new CountingObserver());
+        }
+    }
+
+    @Benchmark
+    public String addSetRemove() {
+        list.add("one");
+        list.set(list.size() - 1, "two");
+        return list.remove(list.size() - 1);
+    }
+
+    /**
+     * Observer which just counts the number of events received.
+     */
+    private static class CountingObserver implements ListObserver {
+
+        private long events;
+
+        @Override
+        public void onItemsAdded(final Object source, final int startIndex, final int endIndex) {
+            events++;
+        }
+
+        @Override
+        public void onItemsRemoved(final Object source, final int startIndex, final int endIndex) {
+            events++;
+        }
+
+        @Override
+        public void onItemsChanged(final Object source, final int startIndex, final int endIndex) {
+            events++;
+        }
+
+    }
+
+}
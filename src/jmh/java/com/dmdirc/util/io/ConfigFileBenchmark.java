@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading and writing of {@link ConfigFile}s.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ConfigFileBenchmark {
+
+    /** The number of domains to generate. */
+    @Param({"10", "500"})
+    public int domains;
+
+    /** The number of entries to generate in each domain. */
+    @Param({"20"})
+    public int entries;
+
+    private Path directory;
+    private Path source;
+    private ConfigFile loaded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InvalidConfigFileException {
+        directory = Files.createTempDirectory("configfile-benchmark");
+        source = directory.resolve("source.conf");
+
+        final List<String> lines = new ArrayList<>();
+        lines.add("# Generated benchmark config");
+        lines.add("keysections:");
+        for (int i = 0; i < domains; i += 2) {
+            lines.add("  keydomain" + i);
+        }
+        for (int i = 0; i < domains; i++) {
+            lines.add("");
+            if (i % 2 == 0) {
+                lines.add("keydomain" + i + ':');
+                for (int j = 0; j < entries; j++) {
+                    lines.add("  some.key\\=" + j + "=value \\#" + j + " with\\nescapes");
+                }
+            } else {
+                lines.add("flatdomain" + i + ':');
+                for (int j = 0; j < entries; j++) {
+                    lines.add("\tflat entry number " + j);
+                }
+            }
+        }
+        Files.write(source, lines, StandardCharsets.UTF_8);
+
+        loaded = new ConfigFile(source);
+        loaded.read();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public ConfigFile read() throws IOException, InvalidConfigFileException {
+        final ConfigFile file = new ConfigFile(source);
+        file.read();
+        return file;
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        loaded.write();
+    }
+
+}
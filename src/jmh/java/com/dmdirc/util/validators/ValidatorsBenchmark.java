@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.validators;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the commonly used validators.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ValidatorsBenchmark {
+
+    private final Validator<String> nickname = new NicknameValidator();
+    private final Validator<String> ident = new IdentValidator();
+    private final Validator<String> email = new EmailAddressValidator();
+    private final Validator<String> colour = new ColourValidator();
+    private final Validator<String> port = new PortValidator();
+    private final Validator<String> serverName = new ServerNameValidator();
+    private final Validator<String> chain = ValidatorChain.<String>builder()
+            .addValidator(new NotEmptyValidator())
+            .addValidator(new StringLengthValidator(1, 30))
+            .addValidator(new NicknameValidator())
+            .build();
+
+    @Benchmark
+    public ValidationResponse nickname() {
+        return nickname.validate("Some[Nick]_^");
+    }
+
+    @Benchmark
+    public ValidationResponse ident() {
+        return ident.validate("someident");
+    }
+
+    @Benchmark
+    public ValidationResponse email() {
+        return email.validate("someone@example.com");
+    }
+
+    @Benchmark
+    public ValidationResponse colour() {
+        return colour.validate("ff00cc");
+    }
+
+    @Benchmark
+    public ValidationResponse port() {
+        return port.validate("6667");
+    }
+
+    @Benchmark
+    public ValidationResponse serverName() {
+        return serverName.validate("irc.example.net");
+    }
+
+    @Benchmark
+    public ValidationResponse chain() {
+        return chain.validate("Some[Nick]_^");
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util;
+
+import com.google.common.collect.Interner;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wraps a string {@link Interner}, keeping track of how often it returns a previously seen
+ * instance and estimating how much heap that has saved.
+ *
+ * <p>The estimate assumes each duplicate string would otherwise have kept its own
+ * {@code String} object and {@code char[]} alive, using the Java 8 object layout with compressed
+ * references. It does not account for strings that would have been garbage collected anyway.
+ */
+public class MeasuredInterner implements Interner<String> {
+
+    /** The interner to delegate to. */
+    private final Interner<String> delegate;
+    /** The number of strings that have been interned. */
+    private final LongAdder requests = new LongAdder();
+    /** The number of strings that were replaced by an existing instance. */
+    private final LongAdder hits = new LongAdder();
+    /** The estimated number of bytes saved. */
+    private final LongAdder bytesSaved = new LongAdder();
+
+    /**
+     * Creates a new interner that measures the given interner.
+     *
+     * @param delegate The interner to delegate to
+     */
+    public MeasuredInterner(final Interner<String> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String intern(final String sample) {
+        final String result = delegate.intern(sample);
+
+        requests.increment();
+        if (result != sample) {
+            hits.increment();
+            bytesSaved.add(getSize(sample));
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the number of strings that have been interned.
+     *
+     * @return The number of calls to {@link #intern(String)}
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Gets the number of strings that were replaced by a previously interned instance.
+     *
+     * @return The number of interned strings that were duplicates
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the estimated number of bytes saved by discarding duplicate strings.
+     *
+     * @return The estimated number of bytes saved
+     */
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Interned " + getRequests() + " strings, " + getHits() + " duplicates, saving ~"
+                + getBytesSaved() + " bytes";
+    }
+
+    /**
+     * Estimates the retained size of a string.
+     *
+     * @param string The string to measure
+     * @return The estimated size of the string and its character array, in bytes
+     */
+    private static long getSize(final String string) {
+        return 24 + align(16 + 2L * string.length());
+    }
+
+    /**
+     * Rounds the given size up to the next multiple of 8 bytes.
+     *
+     * @param size The size to align
+     * @return The aligned size
+     */
+    private static long align(final long size) {
+        return (size + 7) & ~7L;
+    }
+
+}
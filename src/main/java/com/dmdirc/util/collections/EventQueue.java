@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A bounded queue of events for one type of listener, which are run in the order they were
+ * posted by draining the queue on an {@link Executor}. At most one task drains the queue at a
+ * time, and each task runs all of the events that are available in batches before finishing.
+ */
+final class EventQueue {
+
+    /** The executor to drain the queue on. */
+    private final Executor executor;
+    /** What to do when the queue is full. */
+    private final OverflowPolicy policy;
+    /** The maximum number of events to take from the queue at once. */
+    private final int batchSize;
+    /** The pending events. */
+    private final BlockingQueue<Runnable> queue;
+    /** Whether a task to drain the queue has been submitted and not yet finished. */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Creates a new event queue.
+     *
+     * @param executor The executor to drain the queue on
+     * @param capacity The maximum number of pending events
+     * @param policy What to do when the queue is full
+     */
+    EventQueue(final Executor executor, final int capacity, final OverflowPolicy policy) {
+        this.executor = executor;
+        this.policy = policy;
+        this.batchSize = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Adds an event to the queue, and ensures that the queue will be drained.
+     *
+     * @param event The event to be run
+     * @return True if the event was queued, false if it was dropped or the thread was
+     * interrupted while waiting for space
+     * @throws RejectedExecutionException If the queue is full and the policy is
+     * {@link OverflowPolicy#REJECT}, or the executor rejected the task to drain the queue, in
+     * which case the event is removed from the queue again
+     */
+    boolean post(final Runnable event) {
+        if (!queue.offer(event)) {
+            switch (policy) {
+                case BLOCK:
+                    try {
+                        queue.put(event);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                    break;
+                case DROP:
+                    return false;
+                default:
+                    throw new RejectedExecutionException("Listener event queue is full");
+            }
+        }
+
+        try {
+            schedule();
+        } catch (RejectedExecutionException ex) {
+            // If the event is no longer queued, a task scheduled by another thread has taken it.
+            if (queue.remove(event)) {
+                throw ex;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Submits a task to drain the queue, if one is not already pending.
+     */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException ex) {
+                scheduled.set(false);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Runs events from the queue until it is empty. Any exception or error thrown by an event
+     * is passed to the current thread's uncaught exception handler, and does not stop later
+     * events from running. Errors are caught as well as exceptions, as an error escaping here
+     * would leave the queue marked as scheduled, and no event for the type would run again.
+     */
+    private void drain() {
+        final List<Runnable> batch = new ArrayList<>(Math.min(batchSize, 64));
+        do {
+            while (queue.drainTo(batch, batchSize) > 0) {
+                for (Runnable event : batch) {
+                    try {
+                        event.run();
+                    } catch (Throwable ex) {
+                        final Thread thread = Thread.currentThread();
+                        thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+                    }
+                }
+                batch.clear();
+            }
+            scheduled.set(false);
+            // An event may have been queued after the last drain but before the flag was
+            // cleared, in which case its poster will not have scheduled a task.
+        } while (!queue.isEmpty() && scheduled.compareAndSet(false, true));
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.collections;
+
+/**
+ * A {@link ListObserver} which passes each event directly on to the observers registered with a
+ * {@link ListenerList}. The observers' entries are iterated directly, so no objects are
+ * allocated for each event.
+ */
+final class ListObserverDispatcher implements ListObserver {
+
+    /** The event type for {@link ListObserver#onItemsAdded(Object, int, int)}. */
+    private static final int ADDED = 0;
+    /** The event type for {@link ListObserver#onItemsRemoved(Object, int, int)}. */
+    private static final int REMOVED = 1;
+    /** The event type for {@link ListObserver#onItemsChanged(Object, int, int)}. */
+    private static final int CHANGED = 2;
+
+    /** The list holding the observers to pass events on to. */
+    private final ListenerList listeners;
+
+    /**
+     * Creates a new dispatcher.
+     *
+     * @param listeners The list holding the observers to pass events on to. Its observers are
+     * looked up for every event, so observers added later are included.
+     */
+    ListObserverDispatcher(final ListenerList listeners) {
+        this.listeners = listeners;
+    }
+
+    @Override
+    public void onItemsAdded(final Object source, final int startIndex, final int endIndex) {
+        dispatch(ADDED, source, startIndex, endIndex);
+    }
+
+    @Override
+    public void onItemsRemoved(final Object source, final int startIndex, final int endIndex) {
+        dispatch(REMOVED, source, startIndex, endIndex);
+    }
+
+    @Override
+    public void onItemsChanged(final Object source, final int startIndex, final int endIndex) {
+        dispatch(CHANGED, source, startIndex, endIndex);
+    }
+
+    /**
+     * Passes an event on to each observer, recording the calls if metrics are enabled.
+     *
+     * @param event The type of event
+     * @param source The source of the event
+     * @param startIndex The start index of the event
+     * @param endIndex The end index of the event
+     */
+    private void dispatch(final int event, final Object source, final int startIndex,
+            final int endIndex) {
+        final ListenerMetrics metrics = listeners.getMetrics();
+        for (Object entry : listeners.getEntries(ListObserver.class)) {
+            final ListObserver observer = (ListObserver) ListenerArray.unwrap(entry);
+            if (observer == null) {
+                continue;
+            }
+            if (metrics == null) {
+                call(observer, event, source, startIndex, endIndex);
+                continue;
+            }
+
+            final long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                call(observer, event, source, startIndex, endIndex);
+                failed = false;
+            } finally {
+                metrics.record(ListObserver.class, observer, System.nanoTime() - start, failed);
+            }
+        }
+    }
+
+    /**
+     * Calls the method on an observer for the given type of event.
+     *
+     * @param observer The observer to call
+     * @param event The type of event
+     * @param source The source of the event
+     * @param startIndex The start index of the event
+     * @param endIndex The end index of the event
+     */
+    private static void call(final ListObserver observer, final int event, final Object source,
+            final int startIndex, final int endIndex) {
+        switch (event) {
+            case ADDED:
+                observer.onItemsAdded(source, startIndex, endIndex);
+                break;
+            case REMOVED:
+                observer.onItemsRemoved(source, startIndex, endIndex);
+                break;
+            default:
+                observer.onItemsChanged(source, startIndex, endIndex);
+                break;
+        }
+    }
+
+}
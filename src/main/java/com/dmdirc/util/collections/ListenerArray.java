@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.collections;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Predicate;
+
+/**
+ * A collection of listeners backed by an array which is replaced, rather than modified, whenever
+ * a listener is added or removed. Updates are made with a compare-and-set so that they never
+ * block, and iterators see the listeners that were present when they were created.
+ *
+ * <p>Iterators do not support removal, but listeners may be removed in bulk with
+ * {@link #removeIf(Predicate)}, {@link #removeAll(Collection)} and {@link #retainAll(Collection)},
+ * each of which replaces the array in a single update.
+ *
+ * <p>Listeners may be held weakly, in which case they are skipped once they have been garbage
+ * collected. Entries for collected listeners are removed from the array the next time it is
+ * iterated, its entries are retrieved for dispatch, or a listener is added. Listeners may not be null.
+ *
+ * @param <T> The type of listener in the collection
+ */
+final class ListenerArray<T> extends AbstractCollection<T> {
+
+    /** An empty array of listeners. */
+    private static final Object[] EMPTY = new Object[0];
+
+    /** Updater used to replace {@link #array}. */
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<ListenerArray, Object[]> UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(ListenerArray.class, Object[].class, "array");
+
+    /**
+     * The current listeners, or {@link WeakListener}s wrapping them. The array is never modified
+     * once it is published.
+     */
+    private volatile Object[] array = EMPTY;
+
+    /** The queue that weak listeners are added to once they have been collected. */
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+    @Override
+    public boolean add(final T listener) {
+        append(listener);
+        return true;
+    }
+
+    /**
+     * Adds a listener which is only weakly referenced by this collection.
+     *
+     * @param listener The listener to be added
+     */
+    void addWeak(final T listener) {
+        append(new WeakListener(listener, collected));
+    }
+
+    @Override
+    public boolean remove(final Object listener) {
+        Object[] current;
+        Object[] updated;
+        do {
+            current = array;
+            final int index = indexOf(current, listener);
+            if (index < 0) {
+                return false;
+            }
+            if (current.length == 1) {
+                updated = EMPTY;
+            } else {
+                updated = new Object[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, index);
+                System.arraycopy(current, index + 1, updated, index, updated.length - index);
+            }
+        } while (!UPDATER.compareAndSet(this, current, updated));
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean removeIf(final Predicate<? super T> filter) {
+        Objects.requireNonNull(filter);
+        Object[] current;
+        Object[] updated;
+        do {
+            current = array;
+            final Object[] kept = new Object[current.length];
+            int size = 0;
+            boolean removed = false;
+            for (Object entry : current) {
+                final Object listener = unwrap(entry);
+                if (listener == null) {
+                    continue;
+                }
+                if (filter.test((T) listener)) {
+                    removed = true;
+                } else {
+                    kept[size++] = entry;
+                }
+            }
+            if (!removed) {
+                return false;
+            }
+            updated = size == 0 ? EMPTY : Arrays.copyOf(kept, size);
+        } while (!UPDATER.compareAndSet(this, current, updated));
+        return true;
+    }
+
+    @Override
+    public boolean removeAll(final Collection<?> listeners) {
+        Objects.requireNonNull(listeners);
+        return removeIf(listeners::contains);
+    }
+
+    @Override
+    public boolean retainAll(final Collection<?> listeners) {
+        Objects.requireNonNull(listeners);
+        return removeIf(listener -> !listeners.contains(listener));
+    }
+
+    @Override
+    public boolean contains(final Object listener) {
+        return indexOf(array, listener) >= 0;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Object entry : array) {
+            if (unwrap(entry) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !iterator().hasNext();
+    }
+
+    @Override
+    public void clear() {
+        array = EMPTY;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new ArrayIterator(array);
+    }
+
+    /**
+     * Gets the current entries in the array, so that the listeners can be called without
+     * allocating an iterator. The array must not be modified. Entries for listeners that have
+     * been collected since this was last called are removed first, but others may still be
+     * collected at any time, in which case {@link #unwrap(Object)} returns null for them.
+     *
+     * @return The current entries
+     */
+    Object[] getEntries() {
+        if (collected.poll() != null) {
+            while (collected.poll() != null) {
+                // Drain the queue; one expunge removes all of them.
+            }
+            expunge();
+        }
+        return array;
+    }
+
+    /**
+     * Adds an entry to the end of the array, removing any entries for collected listeners.
+     *
+     * @param entry The listener or weak listener to add
+     */
+    private void append(final Object entry) {
+        Object[] current;
+        Object[] updated;
+        do {
+            current = array;
+            updated = copyLive(current, 1);
+            updated[updated.length - 1] = entry;
+        } while (!UPDATER.compareAndSet(this, current, updated));
+    }
+
+    /**
+     * Removes the entries for any weak listeners that have been collected.
+     */
+    private void expunge() {
+        Object[] current;
+        Object[] updated;
+        do {
+            current = array;
+            updated = copyLive(current, 0);
+            if (updated.length == current.length) {
+                return;
+            }
+        } while (!UPDATER.compareAndSet(this, current, updated));
+    }
+
+    /**
+     * Copies the entries for listeners that have not been collected into a new array.
+     *
+     * @param array The entries to copy
+     * @param extra The number of empty elements to leave at the end of the new array
+     * @return A new array containing the live entries
+     */
+    private static Object[] copyLive(final Object[] array, final int extra) {
+        final Object[] live = new Object[array.length + extra];
+        int size = 0;
+        for (Object entry : array) {
+            if (unwrap(entry) != null) {
+                live[size++] = entry;
+            }
+        }
+        if (size + extra == live.length) {
+            return live;
+        }
+        final Object[] trimmed = new Object[size + extra];
+        System.arraycopy(live, 0, trimmed, 0, size);
+        return trimmed;
+    }
+
+    /**
+     * Finds the first entry for a listener in an array.
+     *
+     * @param array The array to search
+     * @param listener The listener to search for
+     * @return The index of the listener, or -1 if it is not present
+     */
+    private static int indexOf(final Object[] array, final Object listener) {
+        if (listener == null) {
+            return -1;
+        }
+        for (int i = 0; i < array.length; i++) {
+            if (listener.equals(unwrap(array[i]))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the listener for an entry in the array.
+     *
+     * @param entry The listener or weak listener
+     * @return The listener, or null if it was weakly held and has been collected
+     */
+    static Object unwrap(final Object entry) {
+        return entry instanceof WeakListener ? ((WeakListener) entry).get() : entry;
+    }
+
+    /**
+     * A weak reference to a listener, used as an entry in the array.
+     */
+    private static class WeakListener extends WeakReference<Object> {
+
+        /**
+         * Creates a new weak reference to the given listener.
+         *
+         * @param listener The listener to reference
+         * @param queue The queue to add the reference to once the listener is collected
+         */
+        WeakListener(final Object listener, final ReferenceQueue<Object> queue) {
+            super(listener, queue);
+        }
+
+    }
+
+    /**
+     * Iterates over a snapshot of the listeners, skipping any that have been collected.
+     */
+    private class ArrayIterator implements Iterator<T> {
+
+        /** The entries being iterated. */
+        private final Object[] entries;
+        /** The index of the entry after {@link #next}. */
+        private int index;
+        /** The next listener to return, or null if there are no more. */
+        private Object next;
+        /** Whether any collected listeners have been found. */
+        private boolean expunged;
+
+        /**
+         * Creates a new iterator over the given entries.
+         *
+         * @param entries The entries to iterate
+         */
+        ArrayIterator(final Object[] entries) {
+            this.entries = entries;
+            advance();
+        }
+
+        /**
+         * Finds the next listener that has not been collected.
+         */
+        private void advance() {
+            while (index < entries.length) {
+                next = unwrap(entries[index++]);
+                if (next != null) {
+                    return;
+                }
+                if (!expunged) {
+                    expunged = true;
+                    expunge();
+                }
+            }
+            next = null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final T result = (T) next;
+            advance();
+            return result;
+        }
+
+    }
+
+}
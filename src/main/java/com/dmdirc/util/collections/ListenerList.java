@@ -17,23 +17,79 @@
 
 package com.dmdirc.util.collections;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
 
 /**
  * Represents a list of event listeners, similar to EventListenerList, but
  * not swing specific.
+ *
+ * <p>Listeners may be added, removed and called from any thread.
  */
 public class ListenerList {
 
+    /** The entries for a type of listener which has never been added. */
+    private static final Object[] NO_LISTENERS = new Object[0];
+    /** The arguments passed to a proxy for methods which take none. */
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    /** The callables that have been created for each type of listener. */
+    private final Map<Class<?>, Object> callables = new ConcurrentHashMap<>();
     /** The map of class->listener or string->listener that we're using. */
-    private final Map<Object, Collection<Object>> listeners = new HashMap<>();
+    private final Map<Object, ListenerArray<Object>> listeners = new ConcurrentHashMap<>();
+    /** The queues of events posted for each type of listener. */
+    private final Map<Class<?>, EventQueue> queues = new ConcurrentHashMap<>();
+    /** The executor to deliver posted events on, or null to deliver them immediately. */
+    @Nullable private final Executor executor;
+    /** The maximum number of pending posted events for each type of listener. */
+    private final int capacity;
+    /** What to do when too many posted events are pending. */
+    private final OverflowPolicy policy;
+    /** The metrics to record calls to listeners in, if enabled. */
+    @Nullable private volatile ListenerMetrics metrics;
+
+    /**
+     * Creates a new listener list which delivers posted events immediately on the posting
+     * thread.
+     */
+    public ListenerList() {
+        this.executor = null;
+        this.capacity = 0;
+        this.policy = OverflowPolicy.BLOCK;
+    }
+
+    /**
+     * Creates a new listener list which delivers events passed to
+     * {@link #post(Class, Consumer)} asynchronously using the given executor. Events for the
+     * same type of listener are delivered one at a time in the order they were posted, while
+     * events for different types may be delivered concurrently if the executor allows it.
+     * Callables returned by {@link #getCallable(Class)} are still called synchronously.
+     *
+     * @param executor The executor to deliver events on
+     * @param capacity The maximum number of pending events for each type of listener
+     * @param policy What to do when an event is posted while the maximum number are pending
+     */
+    public ListenerList(final Executor executor, final int capacity,
+            final OverflowPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.executor = executor;
+        this.capacity = capacity;
+        this.policy = policy;
+    }
 
     /**
      * Adds a new listener of the specified type to this listener list.
@@ -46,11 +102,7 @@ public class ListenerList {
         if (listener == null) {
             throw new IllegalArgumentException("Listener cannot be null");
         }
-        if (!listeners.containsKey(listenerType)) {
-            listeners.put(listenerType, new CopyOnWriteArrayList<>());
-        }
-
-        listeners.get(listenerType).add(listener);
+        listeners.computeIfAbsent(listenerType, k -> new ListenerArray<>()).add(listener);
     }
 
     /**
@@ -63,11 +115,40 @@ public class ListenerList {
         if (listener == null) {
             throw new IllegalArgumentException("Listener cannot be null");
         }
-        if (!listeners.containsKey(listenerType)) {
-            listeners.put(listenerType, new CopyOnWriteArrayList<>());
+        listeners.computeIfAbsent(listenerType, k -> new ListenerArray<>()).add(listener);
+    }
+
+    /**
+     * Adds a new listener of the specified type to this listener list, which
+     * is only weakly referenced. The listener is removed automatically once
+     * it has been garbage collected, so the caller must keep a strong
+     * reference to it for as long as it should receive events.
+     *
+     * @param <T> The type of listener to be added
+     * @param listenerType The type of listener to be added
+     * @param listener The listener to be added
+     */
+    public <T> void addWeak(final Class<T> listenerType, final T listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
         }
+        listeners.computeIfAbsent(listenerType, k -> new ListenerArray<>()).addWeak(listener);
+    }
 
-        listeners.get(listenerType).add(listener);
+    /**
+     * Adds a new listener of the specified type to this listener list, which
+     * is only weakly referenced. The listener is removed automatically once
+     * it has been garbage collected, so the caller must keep a strong
+     * reference to it for as long as it should receive events.
+     *
+     * @param listenerType The name of the type of listener that's being added
+     * @param listener The listener to be added
+     */
+    public void addWeak(final String listenerType, final Object listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        listeners.computeIfAbsent(listenerType, k -> new ListenerArray<>()).addWeak(listener);
     }
 
     /**
@@ -79,7 +160,12 @@ public class ListenerList {
      * @param listener The listener to be removed
      */
     public <T> void remove(final Class<T> listenerType, final T listener) {
-        get(listenerType).remove(listener);
+        remove((Object) listenerType, listener);
+
+        final ListenerMetrics currentMetrics = metrics;
+        if (currentMetrics != null) {
+            currentMetrics.forget(listenerType, listener);
+        }
     }
 
     /**
@@ -91,11 +177,28 @@ public class ListenerList {
      * @param listener The listener to be removed
      */
     public void remove(final String listenerType, final Object listener) {
-        get(listenerType).remove(listener);
+        remove((Object) listenerType, listener);
+    }
+
+    /**
+     * Removes the specified listener from the list of listeners for the
+     * specified key.
+     *
+     * @param listenerType The key that the listener should be removed from
+     * @param listener The listener to be removed
+     */
+    private void remove(final Object listenerType, final Object listener) {
+        final ListenerArray<Object> list = listeners.get(listenerType);
+        if (list != null) {
+            list.remove(listener);
+        }
     }
 
     /**
-     * Retrieves the list of listeners for the specified type.
+     * Retrieves the list of listeners for the specified type. If any
+     * listeners have been added for the type, the returned collection
+     * reflects later changes, and iterating it is not affected by concurrent
+     * changes. Otherwise an immutable empty collection is returned.
      *
      * @param <T> The type of listener to be retrieved
      * @param listenerType The type of listener that's being retrieved
@@ -103,41 +206,133 @@ public class ListenerList {
      */
     @SuppressWarnings("unchecked")
     public <T> Collection<T> get(final Class<T> listenerType) {
-        if (listeners.containsKey(listenerType)) {
-            return (Collection<T>) listeners.get(listenerType);
-        } else {
-            return new CopyOnWriteArrayList<>();
-        }
+        return (Collection<T>) get((Object) listenerType);
     }
 
     /**
-     * Retrieves the list of listeners for the specified type.
+     * Retrieves the list of listeners for the specified type. If any
+     * listeners have been added for the type, the returned collection
+     * reflects later changes, and iterating it is not affected by concurrent
+     * changes. Otherwise an immutable empty collection is returned.
      *
      * @param listenerType The type of listener to be retrieved
      * @return A list of listeners for the specified type
      */
     public Collection<Object> get(final String listenerType) {
-        if (listeners.containsKey(listenerType)) {
-            return listeners.get(listenerType);
-        } else {
-            return new CopyOnWriteArrayList<>();
-        }
+        return get((Object) listenerType);
     }
 
     /**
-     * Returns a callable proxy of the specified type. Methods called on the
-     * returned proxy will be proxied to all of the registered listeners.
+     * Retrieves the list of listeners for the specified key, without
+     * allocating a new collection if there are none.
+     *
+     * @param listenerType The key of the listeners to be retrieved
+     * @return A list of listeners for the specified key
+     */
+    private Collection<Object> get(final Object listenerType) {
+        final Collection<Object> list = listeners.get(listenerType);
+        return list == null ? Collections.emptyList() : list;
+    }
+
+    /**
+     * Gets the current entries for the listeners of the specified type, for
+     * dispatchers to iterate without allocating. The array must not be
+     * modified, and each entry must be passed to
+     * {@link ListenerArray#unwrap(Object)}, skipping any that return null.
+     *
+     * @param listenerType The type of listener
+     * @return The entries for the listeners of the type, which may be empty
+     */
+    Object[] getEntries(final Class<?> listenerType) {
+        final ListenerArray<Object> list = listeners.get(listenerType);
+        return list == null ? NO_LISTENERS : list.getEntries();
+    }
+
+    /**
+     * Returns a callable instance of the specified type. Methods called on the
+     * returned instance will be passed on to all of the registered listeners.
+     *
+     * <p>The same instance is returned every time for a given type.
+     * {@link ListObserver}s are called directly by a dedicated dispatcher.
+     * For other types a proxy is created, which calls the listeners through
+     * method handles that are looked up once for each method.
      *
      * @param <T> The type of listener to be called
      * @param listenerType The type of listener to be called
-     * @return A proxy instance that can be used to call methods
+     * @return An instance that can be used to call methods
      */
     @SuppressWarnings("unchecked")
     public <T> T getCallable(final Class<T> listenerType) {
-        return (T) Proxy.newProxyInstance(listenerType.getClassLoader(),
+        return (T) callables.computeIfAbsent(listenerType, this::createCallable);
+    }
+
+    /**
+     * Posts an event to all of the listeners of the specified type. The event is given the
+     * callable for the type, and should call a single method on it. For example:
+     *
+     * <pre>
+     * listeners.post(ListObserver.class, o -&gt; o.onItemsAdded(this, start, end));
+     * </pre>
+     *
+     * <p>If this list was created with an executor, the event is queued and delivered later,
+     * and any exception thrown by a listener is passed to the delivering thread's uncaught
+     * exception handler. Otherwise it is delivered before this method returns, and exceptions
+     * are thrown to the caller.
+     *
+     * @param <T> The type of listener to be called
+     * @param listenerType The type of listener to be called
+     * @param event The event to deliver to the callable for the type
+     * @return True if the event was delivered or queued, false if it was dropped because the
+     * queue was full
+     * @throws java.util.concurrent.RejectedExecutionException If the queue was full and this
+     * list's policy is {@link OverflowPolicy#REJECT}
+     */
+    public <T> boolean post(final Class<T> listenerType, final Consumer<? super T> event) {
+        if (executor == null) {
+            event.accept(getCallable(listenerType));
+            return true;
+        }
+        final EventQueue queue = queues.computeIfAbsent(listenerType,
+                k -> new EventQueue(executor, capacity, policy));
+        return queue.post(() -> event.accept(getCallable(listenerType)));
+    }
+
+    /**
+     * Creates a new callable for the specified type of listener.
+     *
+     * @param <T> The type of listener to be called
+     * @param listenerType The type of listener to be called
+     * @return A dispatcher or proxy instance for the type
+     */
+    private <T> Object createCallable(final Class<T> listenerType) {
+        if (listenerType == ListObserver.class) {
+            return new ListObserverDispatcher(this);
+        }
+        return Proxy.newProxyInstance(listenerType.getClassLoader(),
                 new Class<?>[] { listenerType }, new CallHandler<>(listenerType));
     }
 
+    /**
+     * Sets the metrics that calls to listeners made through callables
+     * returned by {@link #getCallable(Class)} are recorded in.
+     *
+     * @param metrics The metrics to record calls in, or null to stop
+     * recording them
+     */
+    public void setMetrics(@Nullable final ListenerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets the metrics that calls to listeners are recorded in.
+     *
+     * @return The metrics in use, or null if calls are not being recorded
+     */
+    @Nullable
+    public ListenerMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Utility class to handle calls to a "callable" interface as returned by
      * {@link #getCallable(Class)}.
@@ -148,6 +343,8 @@ public class ListenerList {
 
         /** The type of listener this handler is handling. */
         private final Class<T> listenerType;
+        /** The invoker for each method that has been called. */
+        private final Map<Method, MethodHandle> invokers = new ConcurrentHashMap<>();
 
         /**
          * Creates a new call handler for the specified type of listener.
@@ -161,19 +358,64 @@ public class ListenerList {
         @Override
         public Object invoke(final Object proxy, final Method method,
                 final Object[] args) throws Throwable {
-            for (T target : get(listenerType)) {
+            final MethodHandle invoker = getInvoker(method);
+            final Object[] arguments = args == null ? NO_ARGUMENTS : args;
+            final ListenerMetrics currentMetrics = metrics;
+            for (Object entry : getEntries(listenerType)) {
+                final Object target = ListenerArray.unwrap(entry);
+                if (target == null) {
+                    continue;
+                }
+                if (currentMetrics == null) {
+                    invoker.invokeExact(target, arguments);
+                    continue;
+                }
+
+                final long start = System.nanoTime();
+                boolean failed = true;
                 try {
-                    method.invoke(target, args);
-                } catch (IllegalAccessException | IllegalArgumentException ex) {
-                    // Ignore, not possible
-                } catch (InvocationTargetException ex) {
-                    throw ex.getCause();
+                    invoker.invokeExact(target, arguments);
+                    failed = false;
+                } finally {
+                    currentMetrics.record(listenerType, target, System.nanoTime() - start,
+                            failed);
                 }
             }
 
             return null;
         }
 
+        /**
+         * Gets the invoker for the specified method, creating it if this is the first time the
+         * method has been called.
+         *
+         * @param method The method being called
+         * @return A method handle which takes the target and an array of arguments
+         * @throws IllegalAccessException If the method cannot be accessed
+         */
+        private MethodHandle getInvoker(final Method method) throws IllegalAccessException {
+            final MethodHandle existing = invokers.get(method);
+            if (existing != null) {
+                return existing;
+            }
+
+            MethodHandle handle;
+            try {
+                handle = MethodHandles.publicLookup().unreflect(method);
+            } catch (IllegalAccessException ex) {
+                // The listener interface isn't public.
+                method.setAccessible(true);
+                handle = MethodHandles.lookup().unreflect(method);
+            }
+
+            final int count = method.getParameterCount();
+            final MethodHandle invoker = handle
+                    .asType(MethodType.genericMethodType(count + 1).changeReturnType(void.class))
+                    .asSpreader(Object[].class, count);
+            invokers.put(method, invoker);
+            return invoker;
+        }
+
     }
 
 }
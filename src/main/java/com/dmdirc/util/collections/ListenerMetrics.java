@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.collections;
+
+import com.dmdirc.util.functional.TriConsumer;
+
+import com.google.common.collect.MapMaker;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+/**
+ * Gathers statistics about the listeners called through a {@link ListenerList}, so that slow or
+ * failing listeners can be identified. Metrics are enabled for a list by passing an instance to
+ * {@link ListenerList#setMetrics(ListenerMetrics)}, and may be shared between several lists.
+ *
+ * <p>Statistics are recorded for each call made to a listener by a callable returned from
+ * {@link ListenerList#getCallable(Class)}, including calls made for posted events. The number
+ * of calls, the total and maximum time spent in the listener, and the number of calls that
+ * threw an exception are kept for each listener and for each type of listener. Statistics for a
+ * listener are discarded when it is removed from the list or garbage collected, but remain in
+ * the totals for its type. Listeners are only weakly referenced, so gathering metrics does not
+ * keep listeners added with {@link ListenerList#addWeak(Class, Object)} alive, and are compared
+ * by identity rather than equality.
+ *
+ * <p>Recording a call to a listener that has been called before does not lock.
+ */
+public class ListenerMetrics {
+
+    /** The time after which a call is considered slow, in nanoseconds. */
+    private final long slowThreshold;
+    /** The callback to inform of slow calls, if any. */
+    @Nullable private final TriConsumer<Class<?>, Object, Long> slowListenerCallback;
+    /** The counters for each type of listener. */
+    private final Map<Class<?>, Counters> types = new ConcurrentHashMap<>();
+    /**
+     * The counters for each listener, grouped by type. The inner maps are concurrent and weakly
+     * keyed by the identity of each listener.
+     */
+    private final Map<Class<?>, Map<Object, Counters>> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new metrics instance which does not detect slow listeners.
+     */
+    public ListenerMetrics() {
+        this(Long.MAX_VALUE, TimeUnit.NANOSECONDS, null);
+    }
+
+    /**
+     * Creates a new metrics instance which calls the given callback whenever a call to a
+     * listener takes at least the given time. The callback is called on the thread that called
+     * the listener, with the type of listener, the listener, and the duration of the call in
+     * nanoseconds. Any exception thrown by the callback is passed to that thread's uncaught
+     * exception handler, so it never replaces an exception thrown by the listener or stops the
+     * remaining listeners from being called.
+     *
+     * @param slowThreshold The time after which a call is considered slow
+     * @param unit The unit of the threshold
+     * @param slowListenerCallback The callback to inform of slow calls
+     */
+    public ListenerMetrics(final long slowThreshold, final TimeUnit unit,
+            @Nullable final TriConsumer<Class<?>, Object, Long> slowListenerCallback) {
+        this.slowThreshold = unit.toNanos(slowThreshold);
+        this.slowListenerCallback = slowListenerCallback;
+    }
+
+    /**
+     * Records a call to a listener.
+     *
+     * @param listenerType The type of listener that was called
+     * @param listener The listener that was called
+     * @param nanos The duration of the call, in nanoseconds
+     * @param failed Whether the call threw an exception
+     */
+    void record(final Class<?> listenerType, final Object listener, final long nanos,
+            final boolean failed) {
+        getCounters(types, listenerType).record(nanos, failed);
+
+        Map<Object, Counters> typeListeners = listeners.get(listenerType);
+        if (typeListeners == null) {
+            typeListeners = listeners.computeIfAbsent(listenerType,
+                    k -> new MapMaker().weakKeys().makeMap());
+        }
+        getCounters(typeListeners, listener).record(nanos, failed);
+
+        if (nanos >= slowThreshold && slowListenerCallback != null) {
+            try {
+                slowListenerCallback.accept(listenerType, listener, nanos);
+            } catch (RuntimeException ex) {
+                final Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+            }
+        }
+    }
+
+    /**
+     * Discards the statistics for a listener that is no longer registered.
+     *
+     * @param listenerType The type the listener was registered as
+     * @param listener The listener that was removed
+     */
+    void forget(final Class<?> listenerType, final Object listener) {
+        final Map<Object, Counters> typeListeners = listeners.get(listenerType);
+        if (typeListeners != null) {
+            typeListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Gets a snapshot of the statistics for each type of listener that has been called.
+     *
+     * @return A map of listener types to their statistics
+     */
+    public Map<Class<?>, ListenerStatistics> getTypeStatistics() {
+        final Map<Class<?>, ListenerStatistics> result = new HashMap<>();
+        types.forEach((type, counters) -> result.put(type, counters.snapshot()));
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Gets a snapshot of the statistics for each listener of the given type that has been
+     * called and is still registered.
+     *
+     * @param listenerType The type of listener to get statistics for
+     * @return A map of listeners to their statistics, which compares listeners by identity
+     */
+    public Map<Object, ListenerStatistics> getListenerStatistics(final Class<?> listenerType) {
+        final Map<Object, ListenerStatistics> result = new IdentityHashMap<>();
+        final Map<Object, Counters> typeListeners = listeners.get(listenerType);
+        if (typeListeners != null) {
+            typeListeners.forEach((listener, counters) ->
+                    result.put(listener, counters.snapshot()));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Discards all statistics that have been gathered.
+     */
+    public void reset() {
+        types.clear();
+        listeners.clear();
+    }
+
+    /**
+     * Gets the counters for a key, adding new ones if they are missing. Unlike calling
+     * {@link Map#computeIfAbsent} directly, this does not lock when the key is present.
+     *
+     * @param <K> The type of key
+     * @param counters The map of counters
+     * @param key The key to get counters for
+     * @return The counters for the key
+     */
+    private static <K> Counters getCounters(final Map<K, Counters> counters, final K key) {
+        final Counters existing = counters.get(key);
+        return existing == null ? counters.computeIfAbsent(key, k -> new Counters()) : existing;
+    }
+
+    /**
+     * The counters for a single listener or type of listener.
+     */
+    private static class Counters {
+
+        /** The number of calls. */
+        private final LongAdder invocations = new LongAdder();
+        /** The total duration of all calls, in nanoseconds. */
+        private final LongAdder totalNanos = new LongAdder();
+        /** The longest duration of a call, in nanoseconds. */
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        /** The number of calls which threw an exception. */
+        private final LongAdder exceptions = new LongAdder();
+
+        /**
+         * Records a call.
+         *
+         * @param nanos The duration of the call, in nanoseconds
+         * @param failed Whether the call threw an exception
+         */
+        void record(final long nanos, final boolean failed) {
+            invocations.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            if (failed) {
+                exceptions.increment();
+            }
+        }
+
+        /**
+         * Takes a snapshot of the counters.
+         *
+         * @return The current values of the counters
+         */
+        ListenerStatistics snapshot() {
+            return new ListenerStatistics(invocations.sum(), totalNanos.sum(), maxNanos.get(),
+                    exceptions.sum());
+        }
+
+    }
+
+}
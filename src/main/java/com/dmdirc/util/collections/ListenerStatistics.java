@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.collections;
+
+import java.util.Objects;
+
+/**
+ * A snapshot of the statistics gathered by a {@link ListenerMetrics} for a listener or a type of
+ * listener.
+ */
+public class ListenerStatistics {
+
+    private final long invocations;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long exceptions;
+
+    public ListenerStatistics(final long invocations, final long totalNanos, final long maxNanos,
+            final long exceptions) {
+        this.invocations = invocations;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.exceptions = exceptions;
+    }
+
+    /**
+     * Gets the number of times the listener has been called.
+     *
+     * @return The number of invocations
+     */
+    public long getInvocations() {
+        return invocations;
+    }
+
+    /**
+     * Gets the total time spent in the listener.
+     *
+     * @return The cumulative latency of all invocations, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Gets the longest time spent in a single call to the listener.
+     *
+     * @return The maximum latency of any invocation, in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Gets the average time spent in a call to the listener.
+     *
+     * @return The mean latency of all invocations, in nanoseconds, or zero if there have been
+     * none
+     */
+    public long getMeanNanos() {
+        return invocations == 0 ? 0 : totalNanos / invocations;
+    }
+
+    /**
+     * Gets the number of calls to the listener which threw an exception.
+     *
+     * @return The number of failed invocations
+     */
+    public long getExceptions() {
+        return exceptions;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (o instanceof ListenerStatistics) {
+            final ListenerStatistics other = (ListenerStatistics) o;
+            return invocations == other.getInvocations()
+                    && totalNanos == other.getTotalNanos()
+                    && maxNanos == other.getMaxNanos()
+                    && exceptions == other.getExceptions();
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(invocations, totalNanos, maxNanos, exceptions);
+    }
+
+    @Override
+    public String toString() {
+        return "ListenerStatistics{invocations=" + invocations + ", totalNanos=" + totalNanos
+                + ", maxNanos=" + maxNanos + ", exceptions=" + exceptions + '}';
+    }
+}
@@ -37,6 +37,9 @@ public class ObservableListDecorator<T> implements ObservableList<T> {
     /** The listeners for this list. */
     private final ListenerList listeners = new ListenerList();
 
+    /** The callable used to inform listeners of changes. */
+    private final ListObserver observers = listeners.getCallable(ListObserver.class);
+
     /**
      * Creates a new {@link ObservableListDecorator} which will decorate the
      * given list.
@@ -95,7 +98,7 @@ public class ObservableListDecorator<T> implements ObservableList<T> {
     public boolean add(final T e) {
         list.add(e);
 
-        listeners.getCallable(ListObserver.class).onItemsAdded(this,
+        observers.onItemsAdded(this,
                 list.size() - 1, list.size() - 1);
 
         return true;
@@ -106,7 +109,7 @@ public class ObservableListDecorator<T> implements ObservableList<T> {
         final int index = list.indexOf(o);
 
         if (list.remove(o)) {
-            listeners.getCallable(ListObserver.class).onItemsRemoved(this,
+            observers.onItemsRemoved(this,
                     index, index);
 
             return true;
@@ -123,7 +126,7 @@ public class ObservableListDecorator<T> implements ObservableList<T> {
     @Override
     public boolean addAll(@Nonnull final Collection<? extends T> c) {
         if (list.addAll(c)) {
-            listeners.getCallable(ListObserver.class).onItemsAdded(this,
+            observers.onItemsAdded(this,
                     list.size() - c.size(), list.size() - 1);
             return true;
         }
@@ -134,7 +137,7 @@ public class ObservableListDecorator<T> implements ObservableList<T> {
     @Override
     public boolean addAll(final int index, @Nonnull final Collection<? extends T> c) {
         if (list.addAll(index, c)) {
-            listeners.getCallable(ListObserver.class).onItemsAdded(this,
+            observers.onItemsAdded(this,
                     index, index + c.size());
             return true;
         }
@@ -147,7 +150,7 @@ public class ObservableListDecorator<T> implements ObservableList<T> {
         final int length = list.size();
 
         if (list.removeAll(c)) {
-            listeners.getCallable(ListObserver.class).onItemsChanged(this, 0,
+            observers.onItemsChanged(this, 0,
                     length - 1);
 
             return true;
@@ -161,7 +164,7 @@ public class ObservableListDecorator<T> implements ObservableList<T> {
         final int length = list.size();
 
         if (list.retainAll(c)) {
-            listeners.getCallable(ListObserver.class).onItemsChanged(this, 0,
+            observers.onItemsChanged(this, 0,
                     length - 1);
 
             return true;
@@ -177,7 +180,7 @@ public class ObservableListDecorator<T> implements ObservableList<T> {
         list.clear();
 
         if (length > 0) {
-            listeners.getCallable(ListObserver.class).onItemsRemoved(this, 0,
+            observers.onItemsRemoved(this, 0,
                     length - 1);
         }
     }
@@ -191,7 +194,7 @@ public class ObservableListDecorator<T> implements ObservableList<T> {
     public T set(final int index, final T element) {
         final T res = list.set(index, element);
 
-        listeners.getCallable(ListObserver.class).onItemsChanged(this, index, index);
+        observers.onItemsChanged(this, index, index);
 
         return res;
     }
@@ -200,14 +203,14 @@ public class ObservableListDecorator<T> implements ObservableList<T> {
     public void add(final int index, final T element) {
         list.add(index, element);
 
-        listeners.getCallable(ListObserver.class).onItemsAdded(this, index, index);
+        observers.onItemsAdded(this, index, index);
     }
 
     @Override
     public T remove(final int index) {
         final T res = list.remove(index);
 
-        listeners.getCallable(ListObserver.class).onItemsRemoved(this, index, index);
+        observers.onItemsRemoved(this, index, index);
 
         return res;
     }
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.collections;
+
+/**
+ * Determines what happens when an event is posted to a {@link ListenerList} whose queue of
+ * pending asynchronous events for that type of listener is full.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The posting thread waits until there is space in the queue. Events must not be posted
+     * with this policy from a listener of the same type, as the queue can never drain while
+     * that listener is waiting.
+     */
+    BLOCK,
+
+    /** The event is discarded and {@link ListenerList#post} returns {@code false}. */
+    DROP,
+
+    /** A {@link java.util.concurrent.RejectedExecutionException} is thrown to the poster. */
+    REJECT
+
+}
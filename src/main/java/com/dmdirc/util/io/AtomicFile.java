@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nullable;
+
+/**
+ * Replaces the contents of files atomically. New content is written to a temporary file in the
+ * same directory, which is synced to disk and then moved over the original, so readers never see
+ * a partially written file and a crash leaves either the old or the new content in place.
+ *
+ * <p>Binary sidecar files can also be written with a trailing CRC32 checksum, and are only read
+ * back if the checksum matches, so that files damaged in other ways are ignored.
+ */
+final class AtomicFile {
+
+    /**
+     * Writes the new content of a file.
+     */
+    interface ContentWriter {
+
+        /**
+         * Writes content to the given channel, which is positioned at the start of an empty file.
+         *
+         * @param channel The channel to write to
+         * @throws IOException if the content could not be written
+         */
+        void write(FileChannel channel) throws IOException;
+
+    }
+
+    /**
+     * Writes the content of a checksummed file.
+     */
+    interface DataWriter {
+
+        /**
+         * Writes content to the given stream.
+         *
+         * @param out The stream to write to
+         * @throws IOException if the content could not be written
+         */
+        void write(DataOutputStream out) throws IOException;
+
+    }
+
+    private AtomicFile() {
+        // Shouldn't be instantiated
+    }
+
+    /**
+     * Replaces the content of the specified file. If the path is a symbolic link, the file it
+     * points to is replaced and the link is kept. If the file already exists, its POSIX
+     * permissions are copied to the new file, as are its owner and group where the current user
+     * is allowed to set them. Once the new file has been moved into place, its directory is
+     * synced so that the rename itself is durable, on platforms that support it.
+     *
+     * @param path The file to replace
+     * @param writer The writer to produce the new content
+     * @throws IOException if the file could not be written
+     */
+    static void replace(final Path path, final ContentWriter writer) throws IOException {
+        final Path target = resolve(path);
+        final Path directory = target.toAbsolutePath().getParent();
+        final Path temp = createTemp(directory, target.getFileName().toString());
+
+        try {
+            copyAttributes(target, temp);
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                writer.write(channel);
+                channel.force(true);
+            }
+
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            syncDirectory(directory);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Replaces the content of the specified file as described by {@link #replace}, followed by
+     * a CRC32 checksum of the content.
+     *
+     * @param path The file to replace
+     * @param writer The writer to produce the new content
+     * @throws IOException if the file could not be written
+     */
+    static void replaceChecksummed(final Path path, final DataWriter writer) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        bytes.write(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+
+        replace(path, channel -> writeFully(channel, ByteBuffer.wrap(bytes.toByteArray())));
+    }
+
+    /**
+     * Reads a file written by {@link #replaceChecksummed}, if it exists and its checksum matches
+     * its content.
+     *
+     * @param path The file to read
+     * @return A stream of the file's content without the checksum, or null if the file doesn't
+     * exist or is damaged
+     * @throws IOException if the file could not be read
+     */
+    @Nullable
+    static DataInputStream readChecksummed(final Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        final byte[] bytes = Files.readAllBytes(path);
+        if (bytes.length < 4) {
+            return null;
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt()) {
+            return null;
+        }
+
+        return new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4));
+    }
+
+    /**
+     * Writes all of the remaining content of a buffer to a channel.
+     *
+     * @param channel The channel to write to
+     * @param buffer The buffer to write
+     * @throws IOException if the content could not be written
+     */
+    static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Finds the file that should be replaced for the given path, following any symbolic links.
+     *
+     * @param path The path being written
+     * @return The real path of the file, or of the missing file a link points to
+     * @throws IOException if the path could not be resolved
+     */
+    private static Path resolve(final Path path) throws IOException {
+        Path target = path;
+        for (int i = 0; i < 40 && Files.isSymbolicLink(target); i++) {
+            if (Files.exists(target)) {
+                return target.toRealPath();
+            }
+            final Path link = Files.readSymbolicLink(target);
+            target = target.toAbsolutePath().getParent().resolve(link);
+        }
+        return target;
+    }
+
+    /**
+     * Creates a new, empty temporary file. Unlike {@link Files#createTempFile}, the file is
+     * created with the default permissions for new files rather than being private to the user.
+     *
+     * @param directory The directory to create the file in
+     * @param prefix The prefix to give the file's name
+     * @return The path of the new file
+     * @throws IOException if the file could not be created
+     */
+    private static Path createTemp(final Path directory, final String prefix) throws IOException {
+        while (true) {
+            final Path temp = directory.resolve(prefix + '.'
+                    + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                Files.newByteChannel(temp, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE).close();
+                return temp;
+            } catch (FileAlreadyExistsException ex) {
+                // Try another name
+            }
+        }
+    }
+
+    /**
+     * Copies the POSIX permissions, owner and group of an existing file to its replacement.
+     *
+     * @param original The file being replaced
+     * @param replacement The file that will replace it
+     * @throws IOException if the permissions could not be copied
+     */
+    private static void copyAttributes(final Path original, final Path replacement)
+            throws IOException {
+        final PosixFileAttributeView view = Files.getFileAttributeView(replacement,
+                PosixFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+        if (view == null || !Files.exists(original)) {
+            return;
+        }
+
+        final PosixFileAttributes attributes = Files.readAttributes(original,
+                PosixFileAttributes.class);
+        try {
+            view.setOwner(attributes.owner());
+            view.setGroup(attributes.group());
+        } catch (IOException ex) {
+            // Only privileged users may give files away; the replacement keeps our ownership.
+        }
+        view.setPermissions(attributes.permissions());
+    }
+
+    /**
+     * Syncs a directory to disk, so that a rename within it survives a crash. Not all platforms
+     * allow directories to be opened, in which case this does nothing.
+     *
+     * @param directory The directory to sync
+     */
+    private static void syncDirectory(final Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            // Directories can't be opened or synced on this platform or filesystem.
+        }
+    }
+
+}
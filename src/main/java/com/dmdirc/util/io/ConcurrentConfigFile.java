@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.io;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * A thread-safe view of a {@link ConfigFile}. Each domain is published as an immutable snapshot,
+ * taken from the config file the first time the domain is used, so reads of a domain that has
+ * been used never block and always see a consistent version of it. Modifications replace
+ * the affected domain's snapshot atomically, and are copied into the underlying config file
+ * when it is written.
+ *
+ * <p>Once a view has been created, the underlying config file should only be modified through
+ * the view. The underlying file is accessed while holding its monitor, in line with
+ * {@link ConfigFileWriter} and {@link ConfigFileReloader}.
+ */
+public class ConcurrentConfigFile {
+
+    /** The config file being viewed. */
+    private final ConfigFile configFile;
+    /** The current snapshot of each key domain that has been used. */
+    private final Map<String, Map<String, String>> keydomains = new ConcurrentHashMap<>();
+    /** The current snapshot of each flat domain that has been used. */
+    private final Map<String, List<String>> flatdomains = new ConcurrentHashMap<>();
+    /** The domains modified since the underlying file was last written. */
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a new view of the specified config file, which should already have been read.
+     *
+     * @param configFile The config file to view
+     */
+    public ConcurrentConfigFile(final ConfigFile configFile) {
+        this.configFile = configFile;
+    }
+
+    /**
+     * Retrieves all the key domains in this view, taking a snapshot of any that haven't been
+     * used yet. The returned map reflects changes made to the view, but each domain within it
+     * is an immutable snapshot.
+     *
+     * @return An unmodifiable map of domain names to their key/values
+     */
+    public Map<String, Map<String, String>> getKeyDomains() {
+        final List<String> names;
+        synchronized (configFile) {
+            names = new ArrayList<>(configFile.getKeyDomainNames());
+        }
+        names.forEach(this::getKeyDomain);
+        return Collections.unmodifiableMap(keydomains);
+    }
+
+    /**
+     * Retrieves an immutable snapshot of the specified key domain.
+     *
+     * @param domain The domain to be retrieved
+     * @return A map of keys to values in the specified domain, or null if it doesn't exist
+     */
+    public Map<String, String> getKeyDomain(final String domain) {
+        final Map<String, String> values = keydomains.get(domain);
+        return values == null ? keydomains.computeIfAbsent(domain, this::readKeyDomain) : values;
+    }
+
+    /**
+     * Retrieves an immutable snapshot of the specified flat domain.
+     *
+     * @param domain The domain to be retrieved
+     * @return A list of lines in the specified domain, or null if it doesn't exist
+     */
+    public List<String> getFlatDomain(final String domain) {
+        final List<String> values = flatdomains.get(domain);
+        return values == null ? flatdomains.computeIfAbsent(domain, this::readFlatDomain)
+                : values;
+    }
+
+    /**
+     * Retrieves the value of a single key in a key domain.
+     *
+     * @param domain The domain containing the key
+     * @param key The key to retrieve
+     * @return The value of the key, or null if the domain or key doesn't exist
+     */
+    public String getValue(final String domain, final String key) {
+        final Map<String, String> values = getKeyDomain(domain);
+        return values == null ? null : values.get(key);
+    }
+
+    /**
+     * Determines if this view has the specified domain.
+     *
+     * @param domain The domain to check for
+     * @return True if the domain is known, false otherwise
+     */
+    public boolean hasDomain(final String domain) {
+        return isKeyDomain(domain) || isFlatDomain(domain);
+    }
+
+    /**
+     * Determines if this view has the specified key domain.
+     *
+     * @param domain The domain to check for
+     * @return True if the domain is known and keyed, false otherwise
+     */
+    public boolean isKeyDomain(final String domain) {
+        if (keydomains.containsKey(domain)) {
+            return true;
+        }
+
+        synchronized (configFile) {
+            return configFile.isKeyDomain(domain);
+        }
+    }
+
+    /**
+     * Determines if this view has the specified flat domain.
+     *
+     * @param domain The domain to check for
+     * @return True if the domain is known and flat, false otherwise
+     */
+    public boolean isFlatDomain(final String domain) {
+        if (flatdomains.containsKey(domain)) {
+            return true;
+        }
+
+        synchronized (configFile) {
+            return configFile.isFlatDomain(domain);
+        }
+    }
+
+    /**
+     * Sets the value of a key in a key domain, creating the domain if necessary.
+     *
+     * @param domain The domain to modify
+     * @param key The key to set
+     * @param value The new value of the key
+     */
+    public void setValue(final String domain, final String key, final String value) {
+        updateKeyDomain(domain, values -> values.put(key, value));
+    }
+
+    /**
+     * Removes a key from a key domain, if it exists.
+     *
+     * @param domain The domain to modify
+     * @param key The key to remove
+     */
+    public void removeValue(final String domain, final String key) {
+        if (isKeyDomain(domain)) {
+            updateKeyDomain(domain, values -> values.remove(key));
+        }
+    }
+
+    /**
+     * Atomically updates a key domain, creating it if necessary. The updater is given a mutable
+     * copy of the domain's current contents, which is published once the updater returns. The
+     * updater may be called while other updates to the same domain are blocked, so it should
+     * be quick and must not modify this view.
+     *
+     * @param domain The domain to modify
+     * @param updater The function to apply to a copy of the domain's contents
+     */
+    public void updateKeyDomain(final String domain, final Consumer<Map<String, String>> updater) {
+        keydomains.compute(domain, (name, current) -> {
+            final Map<String, String> existing = current == null ? readKeyDomain(name) : current;
+            final Map<String, String> values = existing == null ? new HashMap<>()
+                    : new HashMap<>(existing);
+            updater.accept(values);
+            return ImmutableMap.copyOf(values);
+        });
+        dirty.add(domain);
+    }
+
+    /**
+     * Replaces the contents of an existing flat domain.
+     *
+     * @param domain The domain to modify
+     * @param values The new contents of the domain
+     * @throws IllegalArgumentException if the domain is not a flat domain
+     */
+    public void setFlatDomain(final String domain, final List<String> values) {
+        final List<String> snapshot = ImmutableList.copyOf(values);
+        if (getFlatDomain(domain) == null
+                || flatdomains.computeIfPresent(domain, (name, current) -> snapshot) == null) {
+            throw new IllegalArgumentException("Not a flat domain: " + domain);
+        }
+        dirty.add(domain);
+    }
+
+    /**
+     * Copies any modified domains into the underlying config file, and writes it to disk.
+     *
+     * @throws IOException if the write operation fails
+     */
+    public void write() throws IOException {
+        synchronized (configFile) {
+            for (String domain : dirty) {
+                dirty.remove(domain);
+                copyToConfigFile(domain);
+            }
+
+            configFile.write();
+        }
+    }
+
+    /**
+     * Takes a snapshot of a key domain from the underlying config file.
+     *
+     * @param domain The domain to read
+     * @return An immutable copy of the domain, or null if it isn't a key domain
+     */
+    private Map<String, String> readKeyDomain(final String domain) {
+        synchronized (configFile) {
+            final Map<String, String> values = configFile.peekKeyDomain(domain);
+            return values == null ? null : ImmutableMap.copyOf(values);
+        }
+    }
+
+    /**
+     * Takes a snapshot of a flat domain from the underlying config file.
+     *
+     * @param domain The domain to read
+     * @return An immutable copy of the domain, or null if it isn't a flat domain
+     */
+    private List<String> readFlatDomain(final String domain) {
+        synchronized (configFile) {
+            final List<String> values = configFile.peekFlatDomain(domain);
+            return values == null ? null : ImmutableList.copyOf(values);
+        }
+    }
+
+    /**
+     * Copies the current snapshot of a domain into the underlying config file.
+     *
+     * @param domain The domain to copy
+     */
+    private void copyToConfigFile(final String domain) {
+        final Map<String, String> values = keydomains.get(domain);
+        if (values != null) {
+            final Map<String, String> target = configFile.getKeyDomain(domain);
+            if (target == null) {
+                configFile.addDomain(domain, new HashMap<>(values));
+            } else {
+                target.keySet().retainAll(values.keySet());
+                target.putAll(values);
+            }
+        }
+
+        final List<String> lines = flatdomains.get(domain);
+        if (lines != null) {
+            final List<String> target = configFile.getFlatDomain(domain);
+            target.clear();
+            target.addAll(lines);
+        }
+    }
+
+}
@@ -17,18 +17,33 @@
 
 package com.dmdirc.util.io;
 
+import com.google.common.collect.Interner;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+
+import javax.annotation.Nullable;
 
 /**
  * Reads and writes a standard DMDirc config file.
@@ -44,9 +59,47 @@ public class ConfigFile extends TextFile {
     /** The key/value sets associated with each key domain. */
     private final Map<String, Map<String, String>> keydomains = new HashMap<>();
 
+    /** The unparsed ranges of {@link #content} belonging to each domain, when reading lazily. */
+    private final Map<String, List<DomainRange>> pending = new HashMap<>();
+
+    /**
+     * The range of bytes in the file holding the text of each domain, as of
+     * the last read or write, used to avoid re-serialising unchanged domains
+     * when writing. Domains which can't be copied verbatim, such as those with
+     * more than one header, map to null.
+     */
+    private final Map<String, Segment> segments = new HashMap<>();
+
+    /** The domains which have been handed out to callers, and so may have been modified. */
+    private final Set<String> touched = new HashSet<>();
+
     /** Whether or not we should automatically create domains. */
     private boolean automake;
 
+    /** Whether or not domains should only be parsed when they are first requested. */
+    private boolean lazy;
+
+    /** The content of the file as last read, retained while there are still domains to parse. */
+    private String content;
+
+    /** The size of the file when {@link #segments} were recorded. */
+    private long segmentsSize;
+
+    /** The modification time of the file when {@link #segments} were recorded, if any. */
+    private FileTime segmentsModified;
+
+    /** The size of the file when this object last wrote it. */
+    private long writtenSize;
+
+    /** The modification time of the file when this object last wrote it, if it has. */
+    private FileTime writtenModified;
+
+    /** Whether or not a binary snapshot of the file should be used to speed up reading. */
+    private boolean snapshot;
+
+    /** The interner to use for domain names and keys. */
+    private Interner<String> interner = value -> value;
+
     /**
      * Creates a new read-only Config File from the specified input stream.
      *
@@ -76,6 +129,52 @@ public class ConfigFile extends TextFile {
         this.automake = automake;
     }
 
+    /**
+     * Sets whether this config file is read lazily. If lazy reading is enabled,
+     * {@link #read()} only scans the file for domain headers, and the contents
+     * of each domain are parsed the first time they are requested. The
+     * keysections domain is always parsed immediately.
+     *
+     * <p>As lines within a domain are not validated until the domain is
+     * parsed, an invalid line in a lazily read domain results in an
+     * {@link IllegalStateException} when that domain is requested, rather than
+     * an {@link InvalidConfigFileException} from {@link #read()}. The text of
+     * the file is kept in memory until every domain has been parsed.
+     *
+     * @param lazy The new value of the lazy setting of this file
+     */
+    public void setLazy(final boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Sets whether this config file uses a binary snapshot. If enabled, each
+     * time the text of the file is parsed a checksummed binary copy of its
+     * contents is stored alongside it. When the file is next read, the
+     * snapshot is loaded instead of parsing the text, provided the text has
+     * not changed since the snapshot was made. Writing the file discards the
+     * snapshot, and the next read creates a new one from the written text.
+     * Snapshots are only used for files created with a path, and failing to
+     * write one is not an error.
+     *
+     * @param snapshot The new value of the snapshot setting of this file
+     */
+    public void setSnapshot(final boolean snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Sets the interner used for domain names and keys when reading this
+     * file. Sharing an interner, such as a weak interner from
+     * {@link com.google.common.collect.Interners}, between config files
+     * allows them to share a single copy of commonly repeated strings.
+     *
+     * @param interner The interner to use, or null to not intern strings
+     */
+    public void setInterner(@Nullable final Interner<String> interner) {
+        this.interner = interner == null ? value -> value : interner;
+    }
+
     /**
      * Reads the data from the file.
      *
@@ -86,54 +185,266 @@ public class ConfigFile extends TextFile {
         keydomains.clear();
         flatdomains.clear();
         domains.clear();
+        pending.clear();
+        segments.clear();
+        touched.clear();
+        content = null;
+        segmentsModified = null;
 
-        readLines();
+        if (snapshot && getPath() != null) {
+            readWithSnapshot();
+            return;
+        }
 
-        String domain = null;
-        boolean keydomain = false;
-        for (String line : getLines()) {
-            String tline = line;
+        final BasicFileAttributes attributes = getPath() == null ? null
+                : Files.readAttributes(getPath(), BasicFileAttributes.class);
 
-            while (!tline.isEmpty() && (tline.charAt(0) == '\t'
-                    || tline.charAt(0) == ' ')) {
-                tline = tline.substring(1);
+        try (Reader reader = newReader()) {
+            if (lazy) {
+                recordSegments(attributes, index(readFully(reader)));
+            } else {
+                final ConfigFileTokenizer tokenizer = new ConfigFileTokenizer();
+                final ReadHandler handler = new ReadHandler(getPath() == null ? null : tokenizer);
+                tokenizer.tokenize(reader, handler);
+                handler.finish();
+                recordSegments(attributes, tokenizer.getPosition());
             }
+        }
+    }
 
-            if (tline.indexOf('#') == 0 || tline.isEmpty()) {
-                continue;
-            }
+    /**
+     * Records the file attributes that the domain segments were read from, so
+     * that {@link #write()} can check they still describe the file. If the
+     * segments don't span the whole file, as happens if it changed while being
+     * read, they are discarded.
+     *
+     * @param attributes The attributes of the file before it was read, if any
+     * @param length The number of bytes that were read
+     */
+    private void recordSegments(@Nullable final BasicFileAttributes attributes,
+            final long length) {
+        if (attributes != null && attributes.size() == length) {
+            segmentsSize = length;
+            segmentsModified = attributes.lastModifiedTime();
+        } else {
+            segments.clear();
+            segmentsModified = null;
+        }
+    }
+
+    /**
+     * Determines whether the recorded domain segments still describe the file.
+     *
+     * @return True if the segments may be copied from the file
+     * @throws IOException if the file's attributes could not be read
+     */
+    private boolean hasValidSegments() throws IOException {
+        if (segmentsModified == null || !Files.exists(getPath())) {
+            return false;
+        }
 
-            final int offset;
-            if (tline.endsWith(":") && !tline.endsWith("\\:") && findEquals(tline) == -1) {
-                domain = unescape(tline.substring(0, tline.length() - 1));
+        final BasicFileAttributes attributes = Files.readAttributes(getPath(),
+                BasicFileAttributes.class);
+        return attributes.size() == segmentsSize
+                && attributes.lastModifiedTime().equals(segmentsModified);
+    }
+
+    /**
+     * Reads the data from the file's snapshot if it is up to date, or from
+     * the file itself otherwise, in which case a new snapshot is written.
+     *
+     * @throws IOException if an i/o exception occurred when reading
+     * @throws InvalidConfigFileException if the config file isn't valid
+     */
+    private void readWithSnapshot() throws IOException, InvalidConfigFileException {
+        final BasicFileAttributes attributes = Files.readAttributes(getPath(),
+                BasicFileAttributes.class);
+        final byte[] bytes = Files.readAllBytes(getPath());
+        final byte[] hash = ConfigFileSnapshot.hash(bytes);
+        final ConfigFileSnapshot existing = ConfigFileSnapshot.read(
+                ConfigFileSnapshot.getSnapshotPath(getPath()), hash, interner);
 
-                domains.add(domain);
+        if (existing == null) {
+            final CharBuffer text = StandardCharsets.UTF_8.newDecoder()
+                    .decode(ByteBuffer.wrap(bytes));
+            final ConfigFileTokenizer tokenizer = new ConfigFileTokenizer();
+            final ReadHandler handler = new ReadHandler(tokenizer);
+            tokenizer.tokenize(text, 0, text.length(), handler);
+            handler.finish();
+            recordSegments(attributes, bytes.length);
+            writeSnapshot(hash);
+        } else {
+            domains.addAll(existing.getDomains());
+            keydomains.putAll(existing.getKeyDomains());
+            flatdomains.putAll(existing.getFlatDomains());
+        }
+    }
 
-                keydomain = keydomains.containsKey(domain)
-                        || hasFlatDomainValue("keysections", domain);
+    /**
+     * Writes a snapshot of the current contents of the file, which must have
+     * just been parsed from its text.
+     *
+     * @param hash The hash of the text the contents were read from
+     */
+    private void writeSnapshot(final byte[] hash) {
+        loadAll();
 
-                if (keydomain && !keydomains.containsKey(domain)) {
-                    keydomains.put(domain, new HashMap<>());
-                } else if (!keydomain && !flatdomains.containsKey(domain)) {
-                    flatdomains.put(domain, new ArrayList<>());
+        try {
+            new ConfigFileSnapshot(new ArrayList<>(domains), keydomains, flatdomains)
+                    .write(ConfigFileSnapshot.getSnapshotPath(getPath()), hash);
+        } catch (IOException ex) {
+            // The snapshot is only a cache; it will be recreated on the next read.
+        }
+    }
+
+    /**
+     * Scans the given content for domain headers, recording the range of each
+     * domain's body so it can be parsed later by {@link #load(String)}, and
+     * the range of bytes holding each domain's text so it can be reused by
+     * {@link #write()}.
+     *
+     * @param text The content of the file
+     * @return The number of bytes the content occupies when encoded as UTF-8
+     * @throws InvalidConfigFileException if the config file isn't valid
+     */
+    private long index(final String text) throws InvalidConfigFileException {
+        final ReadHandler handler = new ReadHandler();
+        final int length = text.length();
+        int bodyStart = 0;
+        long segmentStart = 0;
+        long segmentEnd = 0;
+        int offset = 0;
+        long offsetBytes = 0;
+
+        while (offset < length) {
+            int start = offset;
+            while (start < length && (text.charAt(start) == ' ' || text.charAt(start) == '\t')) {
+                start++;
+            }
+
+            int end = start;
+            long endBytes = offsetBytes;
+            while (end < length && text.charAt(end) != '\n' && text.charAt(end) != '\r') {
+                endBytes += ConfigFileTokenizer.getEncodedLength(text.charAt(end));
+                end++;
+            }
+            endBytes += start - offset;
+
+            if (start < end && text.charAt(start) != '#') {
+                if (isDomainHeader(text, start, end)) {
+                    addRange(text, handler, bodyStart, offset);
+                    addSegment(handler.domain, segmentStart, segmentEnd);
+                    handler.onDomain(unescape(text.subSequence(start, end - 1)));
+                    bodyStart = end;
+                    segmentStart = offsetBytes;
+                } else if (handler.domain == null) {
+                    throw new InvalidConfigFileException("Unknown or unexpected"
+                            + " line encountered: " + text.substring(start, end));
                 }
-            } else if (domain != null && keydomain
-                    && (offset = findEquals(tline)) != -1) {
-                final String key = unescape(tline.substring(0, offset));
-                final String value = unescape(tline.substring(offset + 1));
+            }
 
-                keydomains.get(domain).put(key, value);
-            } else if (domain != null && !keydomain) {
-                addFlatDomainValue(domain, unescape(tline));
-            } else {
-                throw new InvalidConfigFileException("Unknown or unexpected"
-                        + " line encountered: " + tline);
+            if (start < end) {
+                segmentEnd = end < length - 1 && text.charAt(end) == '\r'
+                        && text.charAt(end + 1) == '\n' ? endBytes + 2
+                        : end < length ? endBytes + 1 : endBytes;
             }
+
+            offset = end + 1;
+            offsetBytes = end < length ? endBytes + 1 : endBytes;
         }
+
+        addRange(text, handler, bodyStart, length);
+        addSegment(handler.domain, segmentStart, segmentEnd);
+        content = pending.isEmpty() ? null : text;
+        return offsetBytes;
     }
 
     /**
-     * Writes the contents of this ConfigFile to disk.
+     * Records the range of bytes occupied by a domain in the file, from the
+     * start of its header to the end of its last non-blank line.
+     *
+     * @param domain The domain being read, if any
+     * @param start The byte offset of the start of the domain's header
+     * @param end The byte offset of the end of the domain's last non-blank line
+     */
+    private void addSegment(@Nullable final String domain, final long start, final long end) {
+        if (domain == null || "keysections".equals(domain)) {
+            return;
+        }
+
+        if (segments.containsKey(domain)) {
+            // The domain is split over multiple headers; always re-serialise it.
+            segments.put(domain, null);
+        } else {
+            segments.put(domain, new Segment(start, end));
+        }
+    }
+
+    /**
+     * Records the body of the domain currently being indexed. The body of the
+     * keysections domain is parsed immediately, as it determines the type of
+     * any subsequent domains.
+     *
+     * @param text The content of the file
+     * @param handler The handler being used to index the file
+     * @param start The offset of the start of the body
+     * @param end The offset of the end of the body
+     * @throws InvalidConfigFileException if the keysections domain isn't valid
+     */
+    private void addRange(final String text, final ReadHandler handler, final int start,
+            final int end) throws InvalidConfigFileException {
+        if (handler.domain == null || start >= end) {
+            return;
+        }
+
+        if ("keysections".equals(handler.domain)) {
+            new ConfigFileTokenizer().tokenize(text, start, end,
+                    new ReadHandler(handler.domain, handler.keydomain));
+        } else {
+            pending.computeIfAbsent(handler.domain, k -> new ArrayList<>())
+                    .add(new DomainRange(start, end, handler.keydomain));
+        }
+    }
+
+    /**
+     * Parses any pending ranges belonging to the specified domain.
+     *
+     * @param domain The domain to be loaded
+     */
+    private void load(final String domain) {
+        final List<DomainRange> ranges = pending.remove(domain);
+        if (ranges == null) {
+            return;
+        }
+
+        try {
+            for (DomainRange range : ranges) {
+                new ConfigFileTokenizer().tokenize(content, range.start, range.end,
+                        new ReadHandler(domain, range.keydomain));
+            }
+        } catch (InvalidConfigFileException ex) {
+            throw new IllegalStateException("Unable to read domain " + domain, ex);
+        }
+
+        if (pending.isEmpty()) {
+            content = null;
+        }
+    }
+
+    /**
+     * Parses all pending domains.
+     */
+    private void loadAll() {
+        new ArrayList<>(pending.keySet()).forEach(this::load);
+    }
+
+    /**
+     * Writes the contents of this ConfigFile to disk. Domains which have not
+     * been handed out to callers since the file was last read or written are
+     * copied verbatim from the existing file rather than being serialised
+     * again, provided the file hasn't been changed by anything else. The new
+     * content is written to a temporary file which then replaces the existing
+     * file.
      *
      * @throws IOException if the write operation fails
      */
@@ -143,54 +454,142 @@ public class ConfigFile extends TextFile {
                     + "that isn't writable");
         }
 
-        final Collection<String> lines = new ArrayList<>();
+        final String newline = System.lineSeparator();
+        final Map<String, Segment> written = new HashMap<>();
+        final boolean splice = hasValidSegments();
 
-        lines.add("# This is a DMDirc configuration file.");
-        lines.add("# Written on: " + new GregorianCalendar().getTime());
+        try (FileChannel previous = splice
+                ? FileChannel.open(getPath(), StandardOpenOption.READ) : null) {
+            AtomicFile.replace(getPath(), channel -> {
+                final Splicer out = new Splicer(previous, channel);
+                out.append("# This is a DMDirc configuration file.").append(newline);
+                out.append("# Written on: ").append(new GregorianCalendar().getTime())
+                        .append(newline);
 
-        writeMeta(lines);
+                writeMeta(out.text(), newline);
 
-        for (String domain : domains) {
-            if ("keysections".equals(domain)) {
-                continue;
-            }
+                for (String domain : domains) {
+                    if ("keysections".equals(domain)) {
+                        continue;
+                    }
 
-            lines.add("");
+                    out.append(newline);
 
-            lines.add(escape(domain) + ':');
+                    final long start = out.position();
+                    final Segment segment = splice ? segments.get(domain) : null;
+                    if (segment != null && isUnchanged(domain)) {
+                        out.copy(segment.start, segment.end);
+                        if (!out.endsWithNewline()) {
+                            out.append(newline);
+                        }
+                    } else {
+                        load(domain);
+                        writeDomain(domain, out.text(), newline);
+                    }
 
-            if (flatdomains.containsKey(domain)) {
-                lines.addAll(flatdomains.get(domain).stream()
-                        .map(entry -> "  " + escape(entry))
-                        .collect(Collectors.toList()));
-            } else {
-                lines.addAll(keydomains.get(domain).entrySet().stream()
-                        .map(entry -> "  " + escape(entry.getKey()) + '=' + escape(entry.getValue()))
-                        .collect(Collectors.toList()));
+                    if (written.containsKey(domain) || keydomains.containsKey(domain)
+                            && flatdomains.containsKey(domain)) {
+                        written.put(domain, null);
+                    } else {
+                        written.put(domain, new Segment(start, out.position()));
+                    }
+                }
+
+                out.flush();
+            });
+        }
+
+        segments.clear();
+        segments.putAll(written);
+        final BasicFileAttributes attributes = Files.readAttributes(getPath(),
+                BasicFileAttributes.class);
+        recordSegments(attributes, attributes.size());
+        writtenSize = attributes.size();
+        writtenModified = attributes.lastModifiedTime();
+
+        if (snapshot) {
+            // The snapshot must match what a read of the new text would produce, so leave it to
+            // the next read rather than building it from domains which may not be parsed yet.
+            try {
+                Files.deleteIfExists(ConfigFileSnapshot.getSnapshotPath(getPath()));
+            } catch (IOException ex) {
+                // A stale snapshot is ignored anyway, as its hash won't match the new text.
             }
         }
+    }
 
-        writeLines(lines);
+    /**
+     * Appends the header and contents of the specified domain.
+     *
+     * @param domain The domain to be written
+     * @param out The builder to append to
+     * @param newline The line separator to use
+     */
+    private void writeDomain(final String domain, final StringBuilder out, final String newline) {
+        out.append(escape(domain)).append(':').append(newline);
+
+        if (flatdomains.containsKey(domain)) {
+            for (String entry : flatdomains.get(domain)) {
+                out.append("  ").append(escape(entry)).append(newline);
+            }
+        } else {
+            for (Map.Entry<String, String> entry : keydomains.get(domain).entrySet()) {
+                out.append("  ").append(escape(entry.getKey())).append('=')
+                        .append(escape(entry.getValue())).append(newline);
+            }
+        }
     }
 
     /**
-     * Appends the meta-data (keysections) to the specified list of lines.
+     * Appends the meta-data (keysections) to the specified builder.
      *
-     * @param lines The set of lines to be appended to
+     * @param out The builder to append to
+     * @param newline The line separator to use
      */
-    private void writeMeta(final Collection<String> lines) {
-        lines.add("");
-        lines.add("# This section indicates which sections below take "
-                + "key/value");
-        lines.add("# pairs, rather than a simple list. It should be "
-                + "placed above");
-        lines.add("# any sections that take key/values.");
-        lines.add("keysections:");
+    private void writeMeta(final StringBuilder out, final String newline) {
+        out.append(newline);
+        out.append("# This section indicates which sections below take "
+                + "key/value").append(newline);
+        out.append("# pairs, rather than a simple list. It should be "
+                + "placed above").append(newline);
+        out.append("# any sections that take key/values.").append(newline);
+        out.append("keysections:").append(newline);
 
-        lines.addAll(domains.stream()
+        domains.stream()
                 .filter(domain -> !"keysections".equals(domain) && keydomains.containsKey(domain))
-                .map(domain -> "  " + domain)
-                .collect(Collectors.toList()));
+                .forEach(domain -> out.append("  ").append(domain).append(newline));
+    }
+
+    /**
+     * Determines whether the specified domain is known not to have changed
+     * since it was last read or written. Once a domain has been handed out to
+     * a caller it may be modified at any time, so it is always considered to
+     * have changed.
+     *
+     * @param domain The domain to check
+     * @return True if the domain is known to be unchanged, false otherwise
+     */
+    private boolean isUnchanged(final String domain) {
+        return pending.containsKey(domain) || !touched.contains(domain);
+    }
+
+    /**
+     * Marks the specified domain as having been handed out to a caller, so
+     * that it is serialised again the next time the file is written.
+     *
+     * @param domain The domain being handed out
+     */
+    private void touch(final String domain) {
+        touched.add(domain);
+    }
+
+    @Override
+    public void delete() throws IOException {
+        super.delete();
+
+        if (snapshot) {
+            Files.deleteIfExists(ConfigFileSnapshot.getSnapshotPath(getPath()));
+        }
     }
 
     /**
@@ -199,6 +598,8 @@ public class ConfigFile extends TextFile {
      * @return This config file's key domains
      */
     public Map<String, Map<String, String>> getKeyDomains() {
+        loadAll();
+        keydomains.keySet().forEach(this::touch);
         return Collections.unmodifiableMap(keydomains);
     }
 
@@ -209,14 +610,29 @@ public class ConfigFile extends TextFile {
      * @return A map of keys to values in the specified domain
      */
     public Map<String, String> getKeyDomain(final String domain) {
+        load(domain);
+
         if (automake && !isKeyDomain(domain)) {
             domains.add(domain);
             keydomains.put(domain, new HashMap<>());
+            segments.put(domain, null);
         }
 
+        touch(domain);
         return keydomains.get(domain);
     }
 
+    /**
+     * Retrieves all the flat domains for this config file.
+     *
+     * @return This config file's flat domains
+     */
+    public Map<String, List<String>> getFlatDomains() {
+        loadAll();
+        flatdomains.keySet().forEach(this::touch);
+        return Collections.unmodifiableMap(flatdomains);
+    }
+
     /**
      * Retrieves the content of the specified flat domain.
      *
@@ -224,9 +640,236 @@ public class ConfigFile extends TextFile {
      * @return A list of lines in the specified domain
      */
     public List<String> getFlatDomain(final String domain) {
+        load(domain);
+        touch(domain);
         return flatdomains.get(domain);
     }
 
+    /**
+     * Retrieves the names of this config file's key domains, without parsing
+     * them.
+     *
+     * @return An unmodifiable view of the names of the key domains
+     */
+    Set<String> getKeyDomainNames() {
+        return Collections.unmodifiableSet(keydomains.keySet());
+    }
+
+    /**
+     * Retrieves the specified key domain without recording that it has been
+     * handed out, for callers which copy the domain rather than modifying it.
+     * Unlike {@link #getKeyDomain(String)} the domain is never created.
+     *
+     * @param domain The domain to be retrieved
+     * @return The key/values of the domain, which must not be modified, or
+     * null if it isn't a key domain
+     */
+    Map<String, String> peekKeyDomain(final String domain) {
+        load(domain);
+        return keydomains.get(domain);
+    }
+
+    /**
+     * Retrieves the specified flat domain without recording that it has been
+     * handed out, for callers which copy the domain rather than modifying it.
+     *
+     * @param domain The domain to be retrieved
+     * @return The lines of the domain, which must not be modified, or null if
+     * it isn't a flat domain
+     */
+    List<String> peekFlatDomain(final String domain) {
+        load(domain);
+        return flatdomains.get(domain);
+    }
+
+    /**
+     * Creates a new, unread config file for the same path as this one, using
+     * the same automake, lazy, snapshot and interner settings.
+     *
+     * @return A new config file with this file's settings
+     */
+    ConfigFile copySettings() {
+        final ConfigFile copy = new ConfigFile(getPath());
+        copy.automake = automake;
+        copy.lazy = lazy;
+        copy.snapshot = snapshot;
+        copy.interner = interner;
+        return copy;
+    }
+
+    /**
+     * Determines whether the file on disk is the one this object last wrote,
+     * going by its size and modification time.
+     *
+     * @param modified The file's current modification time
+     * @param size The file's current size
+     * @return True if this object wrote the file and it hasn't changed since
+     */
+    boolean isLastWritten(final FileTime modified, final long size) {
+        return modified.equals(writtenModified) && size == writtenSize;
+    }
+
+    /**
+     * Parses any domains which haven't been parsed yet, reporting invalid
+     * lines in the same way as a non-lazy {@link #read()}.
+     *
+     * @throws InvalidConfigFileException if a pending domain isn't valid
+     */
+    void loadPending() throws InvalidConfigFileException {
+        try {
+            loadAll();
+        } catch (IllegalStateException ex) {
+            if (ex.getCause() instanceof InvalidConfigFileException) {
+                throw (InvalidConfigFileException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Updates the contents of this config file in place to match another
+     * config file read from the same path. Existing domain maps and lists are
+     * updated rather than replaced, so callers holding references to them see
+     * the changes. The listener is not called directly; instead the returned
+     * task informs it of each domain that changed, so that callers holding a
+     * lock while merging can run it after releasing the lock.
+     *
+     * @param other The newly read config file
+     * @param listener The listener to inform of changes
+     * @return A task which informs the listener of the changes
+     */
+    Runnable merge(final ConfigFile other, final ConfigFileChangeListener listener) {
+        loadAll();
+        other.loadAll();
+
+        final Set<String> names = new LinkedHashSet<>(domains);
+        names.addAll(other.domains);
+
+        final List<Runnable> notifications = new ArrayList<>();
+        for (String domain : names) {
+            final Set<String> added = new HashSet<>();
+            final Set<String> removed = new HashSet<>();
+            final Set<String> changed = new HashSet<>();
+
+            mergeKeyDomain(domain, other.keydomains.get(domain), added, removed, changed);
+            mergeFlatDomain(domain, other.flatdomains.get(domain), added, removed, changed);
+
+            if (!added.isEmpty() || !removed.isEmpty() || !changed.isEmpty()) {
+                notifications.add(() -> listener.onDomainChanged(this, domain,
+                        added, removed, changed));
+            }
+        }
+
+        domains.clear();
+        domains.addAll(other.domains);
+        pending.clear();
+        segments.clear();
+        segments.putAll(other.segments);
+        segmentsSize = other.segmentsSize;
+        segmentsModified = other.segmentsModified;
+        content = null;
+
+        return () -> notifications.forEach(Runnable::run);
+    }
+
+    /**
+     * Updates the specified key domain in place to match the given content.
+     *
+     * @param domain The domain to update
+     * @param updated The new content of the domain, or null if it no longer exists
+     * @param added The set to add any added keys to
+     * @param removed The set to add any removed keys to
+     * @param changed The set to add any changed keys to
+     */
+    private void mergeKeyDomain(final String domain, final Map<String, String> updated,
+            final Set<String> added, final Set<String> removed, final Set<String> changed) {
+        final Map<String, String> existing = keydomains.get(domain);
+
+        if (existing != null) {
+            existing.keySet().stream()
+                    .filter(key -> updated == null || !updated.containsKey(key))
+                    .forEach(removed::add);
+        }
+
+        if (updated != null) {
+            for (Map.Entry<String, String> entry : updated.entrySet()) {
+                if (existing == null || !existing.containsKey(entry.getKey())) {
+                    added.add(entry.getKey());
+                } else if (!entry.getValue().equals(existing.get(entry.getKey()))) {
+                    changed.add(entry.getKey());
+                }
+            }
+        }
+
+        if (updated == null) {
+            keydomains.remove(domain);
+        } else if (existing == null) {
+            keydomains.put(domain, new HashMap<>(updated));
+        } else {
+            existing.keySet().retainAll(updated.keySet());
+            existing.putAll(updated);
+        }
+    }
+
+    /**
+     * Updates the specified flat domain in place to match the given content.
+     *
+     * @param domain The domain to update
+     * @param updated The new content of the domain, or null if it no longer exists
+     * @param added The set to add any added values to
+     * @param removed The set to add any removed values to
+     * @param changed The set to add any moved or duplicated values to
+     */
+    private void mergeFlatDomain(final String domain, final List<String> updated,
+            final Set<String> added, final Set<String> removed, final Set<String> changed) {
+        final List<String> existing = flatdomains.get(domain);
+        final List<String> before = existing == null ? Collections.emptyList() : existing;
+        final List<String> after = updated == null ? Collections.emptyList() : updated;
+
+        if (before.equals(after)) {
+            if (existing == null && updated != null) {
+                flatdomains.put(domain, new ArrayList<>());
+            }
+            return;
+        }
+
+        final Map<String, List<Integer>> beforePositions = getPositions(before);
+        final Map<String, List<Integer>> afterPositions = getPositions(after);
+        afterPositions.forEach((value, positions) -> {
+            if (!beforePositions.containsKey(value)) {
+                added.add(value);
+            } else if (!positions.equals(beforePositions.get(value))) {
+                changed.add(value);
+            }
+        });
+        beforePositions.keySet().stream()
+                .filter(value -> !afterPositions.containsKey(value))
+                .forEach(removed::add);
+
+        if (updated == null) {
+            flatdomains.remove(domain);
+        } else if (existing == null) {
+            flatdomains.put(domain, new ArrayList<>(updated));
+        } else {
+            existing.clear();
+            existing.addAll(updated);
+        }
+    }
+
+    /**
+     * Maps each distinct value in the given list to the indices it occurs at.
+     *
+     * @param values The values to be mapped
+     * @return A map of values to the list of indices they occur at
+     */
+    private static Map<String, List<Integer>> getPositions(final List<String> values) {
+        final Map<String, List<Integer>> positions = new HashMap<>();
+        for (int i = 0; i < values.size(); i++) {
+            positions.computeIfAbsent(values.get(i), k -> new ArrayList<>()).add(i);
+        }
+        return positions;
+    }
+
     /**
      * Determines if this config file has the specified domain.
      *
@@ -267,8 +910,11 @@ public class ConfigFile extends TextFile {
      * @param data The content of the domain
      */
     public void addDomain(final String name, final Map<String, String> data) {
+        load(name);
         domains.add(name);
         keydomains.put(name, data);
+        segments.put(name, null);
+        touch(name);
     }
 
     private boolean hasFlatDomainValue(final String domain, final String value) {
@@ -282,6 +928,275 @@ public class ConfigFile extends TextFile {
         flatdomains.get(domain).add(value);
     }
 
+    /**
+     * Populates this config file's domains from the output of a {@link ConfigFileTokenizer}.
+     */
+    private class ReadHandler implements ConfigFileTokenizer.Handler {
+
+        /** The domain currently being read, if any. */
+        private String domain;
+        /** Whether the current domain is a key domain. */
+        private boolean keydomain;
+        /** The tokenizer to take the byte offsets of domains from, if segments are recorded. */
+        @Nullable private final ConfigFileTokenizer tokenizer;
+        /** The byte offset of the start of the current domain's header. */
+        private long segmentStart;
+
+        /**
+         * Creates a new handler which expects to encounter a domain header
+         * before any entries.
+         */
+        ReadHandler() {
+            this(null);
+        }
+
+        /**
+         * Creates a new handler which expects to encounter a domain header
+         * before any entries, and records the segment of the file occupied by
+         * each domain using the offsets reported by the given tokenizer.
+         *
+         * @param tokenizer The tokenizer feeding this handler, or null to not
+         * record segments
+         */
+        ReadHandler(@Nullable final ConfigFileTokenizer tokenizer) {
+            this.tokenizer = tokenizer;
+        }
+
+        /**
+         * Creates a new handler which will add any entries to the specified
+         * domain.
+         *
+         * @param domain The domain being read
+         * @param keydomain Whether the domain is a key domain
+         */
+        ReadHandler(final String domain, final boolean keydomain) {
+            this.domain = domain;
+            this.keydomain = keydomain;
+            this.tokenizer = null;
+        }
+
+        /**
+         * Records the segment of the last domain, once the tokenizer has
+         * reached the end of the file.
+         */
+        void finish() {
+            if (tokenizer != null) {
+                addSegment(domain, segmentStart, tokenizer.getContentEnd());
+            }
+        }
+
+        @Override
+        public void onDomain(final String name) {
+            if (tokenizer != null) {
+                addSegment(domain, segmentStart, tokenizer.getContentEnd());
+                segmentStart = tokenizer.getLineStart();
+            }
+
+            domain = interner.intern(name);
+
+            domains.add(domain);
+
+            keydomain = keydomains.containsKey(domain)
+                    || hasFlatDomainValue("keysections", domain);
+
+            if (keydomain && !keydomains.containsKey(domain)) {
+                keydomains.put(domain, new HashMap<>());
+            } else if (!keydomain && !flatdomains.containsKey(domain)) {
+                flatdomains.put(domain, new ArrayList<>());
+            }
+        }
+
+        @Override
+        public void onEntry(final CharSequence line, final int equals, final CharSequence raw)
+                throws InvalidConfigFileException {
+            if (domain != null && keydomain && equals != -1) {
+                keydomains.get(domain).put(interner.intern(line.subSequence(0, equals).toString()),
+                        line.subSequence(equals + 1, line.length()).toString());
+            } else if (domain != null && !keydomain) {
+                addFlatDomainValue(domain, line.toString());
+            } else {
+                throw new InvalidConfigFileException("Unknown or unexpected"
+                        + " line encountered: " + raw);
+            }
+        }
+
+    }
+
+    /**
+     * A range of the file's content that belongs to a single domain.
+     */
+    private static class DomainRange {
+
+        /** The offset of the start of the range. */
+        private final int start;
+        /** The offset of the end of the range. */
+        private final int end;
+        /** Whether the range belongs to a key domain. */
+        private final boolean keydomain;
+
+        /**
+         * Creates a new domain range.
+         *
+         * @param start The offset of the start of the range
+         * @param end The offset of the end of the range
+         * @param keydomain Whether the range belongs to a key domain
+         */
+        DomainRange(final int start, final int end, final boolean keydomain) {
+            this.start = start;
+            this.end = end;
+            this.keydomain = keydomain;
+        }
+
+    }
+
+    /**
+     * A range of bytes in the file that holds the text of a single domain.
+     */
+    private static class Segment {
+
+        /** The byte offset of the start of the segment. */
+        private final long start;
+        /** The byte offset of the end of the segment. */
+        private final long end;
+
+        /**
+         * Creates a new segment.
+         *
+         * @param start The byte offset of the start of the segment
+         * @param end The byte offset of the end of the segment
+         */
+        Segment(final long start, final long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+    }
+
+    /**
+     * Writes generated text and ranges copied from the previous version of
+     * the file to a new file.
+     */
+    private static class Splicer {
+
+        /** The previous version of the file, if ranges may be copied from it. */
+        @Nullable private final FileChannel previous;
+        /** The channel to write to. */
+        private final FileChannel out;
+        /** Text which has been generated but not yet written. */
+        private final StringBuilder text = new StringBuilder();
+        /** Whether the last byte copied from the previous file was a line terminator. */
+        private boolean copiedNewline;
+
+        /**
+         * Creates a new splicer.
+         *
+         * @param previous The previous version of the file, if ranges may be copied from it
+         * @param out The channel to write to
+         */
+        Splicer(@Nullable final FileChannel previous, final FileChannel out) {
+            this.previous = previous;
+            this.out = out;
+        }
+
+        /**
+         * Gets the builder that generated text should be appended to.
+         *
+         * @return The builder holding text that is yet to be written
+         */
+        StringBuilder text() {
+            return text;
+        }
+
+        /**
+         * Appends generated text.
+         *
+         * @param value The text to append
+         * @return The builder holding text that is yet to be written
+         */
+        StringBuilder append(final Object value) {
+            return text.append(value);
+        }
+
+        /**
+         * Gets the number of bytes written so far, writing any pending text.
+         *
+         * @return The offset in the new file that the next content will be written at
+         * @throws IOException if pending text could not be written
+         */
+        long position() throws IOException {
+            flush();
+            return out.position();
+        }
+
+        /**
+         * Copies a range of bytes from the previous version of the file.
+         *
+         * @param start The offset of the first byte to copy
+         * @param end The offset after the last byte to copy
+         * @throws IOException if the range could not be copied
+         */
+        void copy(final long start, final long end) throws IOException {
+            flush();
+
+            long position = start;
+            while (position < end) {
+                final long copied = previous.transferTo(position, end - position, out);
+                if (copied <= 0) {
+                    throw new IOException("File was truncated while being written");
+                }
+                position += copied;
+            }
+
+            copiedNewline = false;
+            if (end > start) {
+                final ByteBuffer last = ByteBuffer.allocate(1);
+                previous.read(last, end - 1);
+                copiedNewline = last.get(0) == '\n' || last.get(0) == '\r';
+            }
+        }
+
+        /**
+         * Determines whether the last range copied ended with a line terminator.
+         *
+         * @return True if the copied content ended with a line terminator
+         */
+        boolean endsWithNewline() {
+            return copiedNewline;
+        }
+
+        /**
+         * Writes any pending text.
+         *
+         * @throws IOException if the text could not be written
+         */
+        void flush() throws IOException {
+            if (text.length() > 0) {
+                AtomicFile.writeFully(out, StandardCharsets.UTF_8.encode(CharBuffer.wrap(text)));
+                text.setLength(0);
+            }
+        }
+
+    }
+
+    /**
+     * Reads all remaining content from the given reader.
+     *
+     * @param reader The reader to read from
+     * @return The content of the reader
+     * @throws IOException if the reader throws an exception
+     */
+    private static String readFully(final Reader reader) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        final char[] chunk = new char[8192];
+        int read;
+
+        while ((read = reader.read(chunk)) != -1) {
+            builder.append(chunk, 0, read);
+        }
+
+        return builder.toString();
+    }
+
     /**
      * Unescapes any escaped characters in the specified input string.
      *
@@ -329,15 +1244,33 @@ public class ConfigFile extends TextFile {
     }
 
     /**
-     * Finds the first non-escaped instance of '=' in the specified string.
+     * Determines whether the specified line is a domain header. The line must
+     * not contain any leading whitespace.
+     *
+     * @param input The content containing the line
+     * @param start The offset of the start of the line
+     * @param end The offset of the end of the line
+     * @return True if the line is a domain header, false otherwise
+     */
+    private static boolean isDomainHeader(final CharSequence input, final int start,
+            final int end) {
+        return input.charAt(end - 1) == ':'
+                && (end - start == 1 || input.charAt(end - 2) != '\\')
+                && findEquals(input, start, end) == -1;
+    }
+
+    /**
+     * Finds the first non-escaped instance of '=' in the specified range.
      *
      * @param input The string to be searched
+     * @param start The offset to start searching at
+     * @param end The offset to stop searching at
      * @return The offset of the first non-escaped instance of '=', or -1.
      */
-    private static int findEquals(final CharSequence input) {
+    private static int findEquals(final CharSequence input, final int start, final int end) {
         boolean escaped = false;
 
-        for (int i = 0; i < input.length(); i++) {
+        for (int i = start; i < end; i++) {
             if (escaped) {
                 escaped = false;
             } else if (input.charAt(i) == '\\') {
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.io;
+
+import java.util.Set;
+
+/**
+ * Defines the method that objects interested in changes made to a {@link ConfigFile} when it is
+ * reloaded should implement.
+ */
+public interface ConfigFileChangeListener {
+
+    /**
+     * Called when the contents of a domain have changed. A domain that has been added or removed
+     * is reported as having had all of its keys added or removed. For flat domains, the values
+     * in the domain are reported as keys, and any values which have moved or whose number of
+     * occurrences has changed are reported as changed.
+     *
+     * @param configFile The config file that changed
+     * @param domain The domain that changed
+     * @param added The keys that have been added to the domain
+     * @param removed The keys that have been removed from the domain
+     * @param changed The keys whose values have changed
+     */
+    void onDomainChanged(ConfigFile configFile, String domain, Set<String> added,
+            Set<String> removed, Set<String> changed);
+
+}
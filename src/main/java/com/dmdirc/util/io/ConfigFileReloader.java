@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.io;
+
+import com.dmdirc.util.collections.ListenerList;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Reloads a {@link ConfigFile} when the file backing it is changed on disk, informing listeners
+ * of any keys that have changed.
+ *
+ * <p>The config file is updated while holding its monitor, so any thread accessing the file's
+ * domains while the reloader is running should do so while holding the config file's monitor.
+ * Listeners are informed after the monitor has been released.
+ */
+public class ConfigFileReloader implements AutoCloseable {
+
+    /**
+     * The time to wait after a change is noticed before reloading, in milliseconds, so that
+     * files being written in several steps can be reloaded once they are complete.
+     */
+    private static final long SETTLE_TIME = 200;
+
+    /** The config file being reloaded. */
+    private final ConfigFile configFile;
+    /** The path of the config file. */
+    private final Path path;
+    /** The listeners to inform of changes. */
+    private final ListenerList listeners = new ListenerList();
+    /** The last modified time of the file when it was last loaded. */
+    private FileTime lastModified;
+    /** The size of the file when it was last loaded. */
+    private long lastSize;
+    /** The watch service being used to monitor the file, if started. */
+    private WatchService watchService;
+    /** The thread waiting for changes to the file, if started. */
+    private Thread thread;
+
+    /**
+     * Creates a new reloader for the specified config file. The file is assumed to be up to date
+     * with the contents of the disk at the time the reloader is created.
+     *
+     * @param configFile The config file to reload
+     * @throws IOException if the attributes of the file could not be read
+     */
+    public ConfigFileReloader(final ConfigFile configFile) throws IOException {
+        if (configFile.getPath() == null) {
+            throw new IllegalArgumentException("Cannot reload a config file "
+                    + "opened with an InputStream");
+        }
+
+        this.configFile = configFile;
+        this.path = configFile.getPath();
+
+        if (Files.exists(path)) {
+            lastModified = Files.getLastModifiedTime(path);
+            lastSize = Files.size(path);
+        }
+    }
+
+    /**
+     * Adds a listener to be informed of changes made when the file is reloaded.
+     *
+     * @param listener The listener to be added
+     */
+    public void addChangeListener(final ConfigFileChangeListener listener) {
+        listeners.add(ConfigFileChangeListener.class, listener);
+    }
+
+    /**
+     * Removes a previously added change listener.
+     *
+     * @param listener The listener to be removed
+     */
+    public void removeChangeListener(final ConfigFileChangeListener listener) {
+        listeners.remove(ConfigFileChangeListener.class, listener);
+    }
+
+    /**
+     * Starts watching the file for changes on a background thread.
+     *
+     * @throws IOException if the file's directory cannot be watched
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+
+        watchService = path.getFileSystem().newWatchService();
+        path.toAbsolutePath().getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        thread = new Thread(this::watch, "ConfigFile reloader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Checks whether the file's modification time or size have changed since it was last loaded,
+     * and if so reloads it and informs listeners of the differences. Changes made by the config
+     * file's own {@link ConfigFile#write()} are not reloaded.
+     *
+     * @return True if the file was reloaded, false if it was unchanged
+     * @throws IOException if the file could not be read
+     * @throws InvalidConfigFileException if the file is not valid
+     */
+    public synchronized boolean checkForChanges() throws IOException, InvalidConfigFileException {
+        if (!Files.exists(path)) {
+            return false;
+        }
+
+        final FileTime modified = Files.getLastModifiedTime(path);
+        final long size = Files.size(path);
+        if (modified.equals(lastModified) && size == lastSize) {
+            return false;
+        }
+
+        final ConfigFile updated;
+        synchronized (configFile) {
+            if (configFile.isLastWritten(modified, size)) {
+                // The change was our own write, so reloading would only undo later edits.
+                lastModified = modified;
+                lastSize = size;
+                return false;
+            }
+            updated = configFile.copySettings();
+        }
+        updated.read();
+        updated.loadPending();
+
+        final Runnable notifications;
+        synchronized (configFile) {
+            notifications = configFile.merge(updated,
+                    listeners.getCallable(ConfigFileChangeListener.class));
+        }
+
+        lastModified = modified;
+        lastSize = size;
+        notifications.run();
+        return true;
+    }
+
+    /**
+     * Stops watching the file for changes.
+     *
+     * @throws IOException if the watch service could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (thread != null) {
+            watchService.close();
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Waits for changes to the file's directory, reloading the file whenever it is affected.
+     */
+    private void watch() {
+        final WatchService service;
+        synchronized (this) {
+            service = watchService;
+        }
+
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Thread.sleep(SETTLE_TIME);
+
+                boolean affected = false;
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        affected |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || path.getFileName().equals(event.context());
+                    }
+                    key.reset();
+                    key = service.poll();
+                }
+
+                if (affected) {
+                    try {
+                        checkForChanges();
+                    } catch (IOException | InvalidConfigFileException ex) {
+                        // The file may be part-way through being written; we'll be told when
+                        // it changes again.
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // We've been closed.
+        }
+    }
+
+}
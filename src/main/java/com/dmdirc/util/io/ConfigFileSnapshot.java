@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.io;
+
+import com.google.common.collect.Interner;
+import com.google.common.hash.Hashing;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary copy of the parsed contents of a {@link ConfigFile}, which can be loaded
+ * without parsing the text file as long as the text file has not changed.
+ *
+ * <p>Snapshots consist of a header identifying the format and the hash of the text file they
+ * were created from, a table of every distinct string used in the file, the domains with their
+ * types and contents expressed as indices into the string table, and a trailing CRC32 checksum
+ * of everything before it.
+ */
+final class ConfigFileSnapshot {
+
+    /** The magic number at the start of every snapshot. */
+    private static final int MAGIC = 0x444d4346;
+    /** The version of the snapshot format. */
+    private static final int VERSION = 1;
+    /** The number of bytes used to store the hash of the text file. */
+    private static final int HASH_LENGTH = 16;
+    /** Flag indicating that a domain has key/value content. */
+    private static final int KEY_DOMAIN = 1;
+    /** Flag indicating that a domain has flat content. */
+    private static final int FLAT_DOMAIN = 2;
+
+    /** The names of the domains in the order they appear, including any duplicates. */
+    private final List<String> domains;
+    /** The content of each key domain. */
+    private final Map<String, Map<String, String>> keydomains;
+    /** The content of each flat domain. */
+    private final Map<String, List<String>> flatdomains;
+
+    /**
+     * Creates a new snapshot of the given content.
+     *
+     * @param domains The names of the domains in the order they appear
+     * @param keydomains The content of each key domain
+     * @param flatdomains The content of each flat domain
+     */
+    ConfigFileSnapshot(final List<String> domains,
+            final Map<String, Map<String, String>> keydomains,
+            final Map<String, List<String>> flatdomains) {
+        this.domains = domains;
+        this.keydomains = keydomains;
+        this.flatdomains = flatdomains;
+    }
+
+    /**
+     * Retrieves the names of the domains in the order they appear, including any duplicates.
+     *
+     * @return The names of the domains
+     */
+    List<String> getDomains() {
+        return domains;
+    }
+
+    /**
+     * Retrieves the content of each key domain.
+     *
+     * @return A map of domain names to their keys and values
+     */
+    Map<String, Map<String, String>> getKeyDomains() {
+        return keydomains;
+    }
+
+    /**
+     * Retrieves the content of each flat domain.
+     *
+     * @return A map of domain names to their values
+     */
+    Map<String, List<String>> getFlatDomains() {
+        return flatdomains;
+    }
+
+    /**
+     * Calculates the hash of the given text file content, used to determine whether a snapshot
+     * is still valid.
+     *
+     * @param content The raw content of the text file
+     * @return The hash of the content
+     */
+    static byte[] hash(final byte[] content) {
+        return Hashing.murmur3_128().hashBytes(content).asBytes();
+    }
+
+    /**
+     * Returns the path that the snapshot of the specified text file should be stored at.
+     *
+     * @param path The path of the text file
+     * @return The path of the snapshot
+     */
+    static Path getSnapshotPath(final Path path) {
+        return path.resolveSibling(path.getFileName() + ".snapshot");
+    }
+
+    /**
+     * Reads the snapshot at the specified path, if it exists, is intact, and was created from
+     * text with the given hash.
+     *
+     * @param path The path of the snapshot
+     * @param hash The hash of the current content of the text file
+     * @param interner The interner to use for domain names and keys
+     * @return The snapshot, or null if there is no valid snapshot
+     */
+    static ConfigFileSnapshot read(final Path path, final byte[] hash,
+            final Interner<String> interner) {
+        try (DataInputStream in = AtomicFile.readChecksummed(path)) {
+            return in == null ? null : read(in, hash, interner);
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the body of a snapshot whose checksum has been verified.
+     *
+     * @param in The stream to read from
+     * @param hash The hash of the current content of the text file
+     * @param interner The interner to use for domain names and keys
+     * @return The snapshot, or null if it was created from different text
+     * @throws IOException if the snapshot is truncated
+     */
+    private static ConfigFileSnapshot read(final DataInputStream in, final byte[] hash,
+            final Interner<String> interner) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            return null;
+        }
+
+        final byte[] storedHash = new byte[HASH_LENGTH];
+        in.readFully(storedHash);
+        if (!Arrays.equals(hash, storedHash)) {
+            return null;
+        }
+
+        final String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            final byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            strings[i] = new String(data, StandardCharsets.UTF_8);
+        }
+
+        final Map<String, Map<String, String>> keydomains = new HashMap<>();
+        final Map<String, List<String>> flatdomains = new HashMap<>();
+        final int domainCount = in.readInt();
+        for (int i = 0; i < domainCount; i++) {
+            final String domain = interner.intern(strings[in.readInt()]);
+            final int flags = in.readByte();
+
+            if ((flags & KEY_DOMAIN) != 0) {
+                final int size = in.readInt();
+                final Map<String, String> values = new HashMap<>(Math.max(16, size * 4 / 3 + 1));
+                for (int j = 0; j < size; j++) {
+                    values.put(interner.intern(strings[in.readInt()]), strings[in.readInt()]);
+                }
+                keydomains.put(domain, values);
+            }
+
+            if ((flags & FLAT_DOMAIN) != 0) {
+                final int size = in.readInt();
+                final List<String> values = new ArrayList<>(size);
+                for (int j = 0; j < size; j++) {
+                    values.add(strings[in.readInt()]);
+                }
+                flatdomains.put(domain, values);
+            }
+        }
+
+        final List<String> domains = new ArrayList<>();
+        final int orderCount = in.readInt();
+        for (int i = 0; i < orderCount; i++) {
+            domains.add(interner.intern(strings[in.readInt()]));
+        }
+
+        return new ConfigFileSnapshot(domains, keydomains, flatdomains);
+    }
+
+    /**
+     * Writes this snapshot to the specified path, replacing any existing snapshot.
+     *
+     * @param path The path to write the snapshot to
+     * @param hash The hash of the text file the snapshot was created from
+     * @throws IOException if the snapshot could not be written
+     */
+    void write(final Path path, final byte[] hash) throws IOException {
+        final Map<String, Integer> table = new LinkedHashMap<>();
+        domains.forEach(domain -> intern(table, domain));
+        keydomains.forEach((domain, values) -> {
+            intern(table, domain);
+            values.forEach((key, value) -> {
+                intern(table, key);
+                intern(table, value);
+            });
+        });
+        flatdomains.forEach((domain, values) -> {
+            intern(table, domain);
+            values.forEach(value -> intern(table, value));
+        });
+
+        AtomicFile.replaceChecksummed(path, out -> {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(hash, 0, HASH_LENGTH);
+
+            out.writeInt(table.size());
+            for (String string : table.keySet()) {
+                final byte[] data = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(data.length);
+                out.write(data);
+            }
+
+            final Collection<String> names = new LinkedHashSet<>(keydomains.keySet());
+            names.addAll(flatdomains.keySet());
+            out.writeInt(names.size());
+            for (String domain : names) {
+                out.writeInt(table.get(domain));
+                out.writeByte((keydomains.containsKey(domain) ? KEY_DOMAIN : 0)
+                        | (flatdomains.containsKey(domain) ? FLAT_DOMAIN : 0));
+
+                if (keydomains.containsKey(domain)) {
+                    out.writeInt(keydomains.get(domain).size());
+                    for (Map.Entry<String, String> entry : keydomains.get(domain).entrySet()) {
+                        out.writeInt(table.get(entry.getKey()));
+                        out.writeInt(table.get(entry.getValue()));
+                    }
+                }
+
+                if (flatdomains.containsKey(domain)) {
+                    out.writeInt(flatdomains.get(domain).size());
+                    for (String value : flatdomains.get(domain)) {
+                        out.writeInt(table.get(value));
+                    }
+                }
+            }
+
+            out.writeInt(domains.size());
+            for (String domain : domains) {
+                out.writeInt(table.get(domain));
+            }
+        });
+    }
+
+    /**
+     * Adds the given string to the string table, if it is not already present.
+     *
+     * @param table The string table
+     * @param string The string to add
+     */
+    private static void intern(final Map<String, Integer> table, final String string) {
+        table.putIfAbsent(string, table.size());
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits the content of a DMDirc config file into domain headers and entries in a single pass
+ * over the underlying characters. Leading whitespace, comments and escapes are all dealt with as
+ * the characters are read, so the only strings created are those handed to the {@link Handler}.
+ */
+class ConfigFileTokenizer {
+
+    /** The number of characters to read from the underlying reader at a time. */
+    private static final int CHUNK_SIZE = 8192;
+
+    /** The unescaped content of the current line. */
+    private final StringBuilder line = new StringBuilder();
+    /** The raw content of the current line, used for error reporting. */
+    private final StringBuilder raw = new StringBuilder();
+    /** The offset of the first unescaped '=' in {@link #line}, or -1. */
+    private int equals = -1;
+    /** Whether we're still skipping leading whitespace on the current line. */
+    private boolean leading = true;
+    /** Whether the current line is a comment. */
+    private boolean comment;
+    /** Whether the previous character was an escape character. */
+    private boolean escaped;
+    /** Whether the previous character was a carriage return. */
+    private boolean afterCarriageReturn;
+    /** Whether the most recently finished line had any content, including comments. */
+    private boolean lastLineContent;
+    /** The number of bytes the characters read so far occupy when encoded as UTF-8. */
+    private long position;
+    /** The UTF-8 byte offset of the start of the current line. */
+    private long lineStart;
+    /** The UTF-8 byte offset after the last line with any content, including its terminator. */
+    private long contentEnd;
+
+    /**
+     * Handles the domains and entries found by a {@link ConfigFileTokenizer}.
+     */
+    interface Handler {
+
+        /**
+         * Called when a domain header is encountered.
+         *
+         * @param domain The unescaped name of the domain
+         * @throws InvalidConfigFileException if the domain is not valid at this point
+         */
+        void onDomain(String domain) throws InvalidConfigFileException;
+
+        /**
+         * Called when any other non-empty, non-comment line is encountered. The contents of the
+         * given sequences are only valid for the duration of the call.
+         *
+         * @param line The unescaped content of the line, without leading whitespace
+         * @param equals The offset of the first unescaped '=' in the line, or -1 if there is none
+         * @param raw The raw content of the line, without leading whitespace
+         * @throws InvalidConfigFileException if the entry is not valid at this point
+         */
+        void onEntry(CharSequence line, int equals, CharSequence raw)
+                throws InvalidConfigFileException;
+
+    }
+
+    /**
+     * Reads all content from the given reader, passing domains and entries to the handler.
+     *
+     * @param reader The reader to tokenize
+     * @param handler The handler to inform of domains and entries
+     * @throws IOException if the reader throws an exception
+     * @throws InvalidConfigFileException if the handler rejects any line
+     */
+    void tokenize(final Reader reader, final Handler handler)
+            throws IOException, InvalidConfigFileException {
+        final char[] chunk = new char[CHUNK_SIZE];
+        int read;
+
+        while ((read = reader.read(chunk)) != -1) {
+            for (int i = 0; i < read; i++) {
+                feed(chunk[i], handler);
+            }
+        }
+
+        finish(handler);
+    }
+
+    /**
+     * Reads the specified range of the given content, passing domains and entries to the handler.
+     *
+     * @param content The content to tokenize
+     * @param start The offset of the first character to read
+     * @param end The offset after the last character to read
+     * @param handler The handler to inform of domains and entries
+     * @throws InvalidConfigFileException if the handler rejects any line
+     */
+    void tokenize(final CharSequence content, final int start, final int end,
+            final Handler handler) throws InvalidConfigFileException {
+        for (int i = start; i < end; i++) {
+            feed(content.charAt(i), handler);
+        }
+
+        finish(handler);
+    }
+
+    /**
+     * Processes a single character, ending the current line if it is a line terminator.
+     *
+     * @param ch The character to process
+     * @param handler The handler to inform of any completed line
+     * @throws InvalidConfigFileException if the handler rejects the line
+     */
+    private void feed(final char ch, final Handler handler) throws InvalidConfigFileException {
+        position += getEncodedLength(ch);
+
+        if (ch == '\n' || ch == '\r') {
+            if (ch == '\r' || !afterCarriageReturn) {
+                endLine(handler);
+            } else if (lastLineContent) {
+                contentEnd = position;
+            }
+            afterCarriageReturn = ch == '\r';
+            lineStart = position;
+        } else {
+            afterCarriageReturn = false;
+            accept(ch);
+        }
+    }
+
+    /**
+     * Finishes tokenizing, passing any unterminated line to the handler.
+     *
+     * @param handler The handler to inform of the final line
+     * @throws InvalidConfigFileException if the handler rejects the line
+     */
+    private void finish(final Handler handler) throws InvalidConfigFileException {
+        afterCarriageReturn = false;
+        endLine(handler);
+    }
+
+    /**
+     * Gets the number of bytes that the characters read so far occupy when encoded as UTF-8.
+     *
+     * @return The UTF-8 byte offset of the end of the content read so far
+     */
+    long getPosition() {
+        return position;
+    }
+
+    /**
+     * Gets the UTF-8 byte offset of the start of the current line. While the handler is being
+     * informed of a line, this is the start of that line.
+     *
+     * @return The byte offset of the start of the current line
+     */
+    long getLineStart() {
+        return lineStart;
+    }
+
+    /**
+     * Gets the UTF-8 byte offset after the last line with any content, including comments, and
+     * its line terminator. While the handler is being informed of a line, this refers to the
+     * lines before it.
+     *
+     * @return The byte offset after the last line with content
+     */
+    long getContentEnd() {
+        return contentEnd;
+    }
+
+    /**
+     * Gets the number of bytes the specified character occupies when encoded as UTF-8. Each half
+     * of a surrogate pair is counted as two bytes, so that a pair totals four.
+     *
+     * @param ch The character to measure
+     * @return The encoded length of the character
+     */
+    static int getEncodedLength(final char ch) {
+        if (ch < 0x80) {
+            return 1;
+        } else if (ch < 0x800 || Character.isSurrogate(ch)) {
+            return 2;
+        } else {
+            return 3;
+        }
+    }
+
+    /**
+     * Processes a single character that isn't a line terminator.
+     *
+     * @param ch The character to process
+     */
+    private void accept(final char ch) {
+        if (comment) {
+            return;
+        }
+
+        if (leading) {
+            if (ch == ' ' || ch == '\t') {
+                return;
+            }
+
+            leading = false;
+            if (ch == '#') {
+                comment = true;
+                return;
+            }
+        }
+
+        raw.append(ch);
+
+        if (escaped) {
+            if (ch == 'n') {
+                line.append('\n');
+            } else if (ch == 'r') {
+                line.append('\r');
+            } else {
+                line.append(ch);
+            }
+
+            escaped = false;
+        } else if (ch == '\\') {
+            escaped = true;
+        } else {
+            if (ch == '=' && equals == -1) {
+                equals = line.length();
+            }
+
+            line.append(ch);
+        }
+    }
+
+    /**
+     * Finishes the current line, passing it to the handler if necessary, and resets the state
+     * ready for the next line.
+     *
+     * @param handler The handler to inform of the line's content
+     * @throws InvalidConfigFileException if the handler rejects the line
+     */
+    private void endLine(final Handler handler) throws InvalidConfigFileException {
+        final int length = raw.length();
+
+        try {
+            if (length == 0) {
+                return;
+            }
+
+            if (raw.charAt(length - 1) == ':' && equals == -1
+                    && (length == 1 || raw.charAt(length - 2) != '\\')) {
+                handler.onDomain(line.substring(0, line.length() - 1));
+            } else {
+                handler.onEntry(line, equals, raw);
+            }
+        } finally {
+            lastLineContent = !leading;
+            if (lastLineContent) {
+                contentEnd = position;
+            }
+            line.setLength(0);
+            raw.setLength(0);
+            equals = -1;
+            leading = true;
+            comment = false;
+            escaped = false;
+        }
+    }
+
+}
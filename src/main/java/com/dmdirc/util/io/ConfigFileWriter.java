@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.io;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a {@link ConfigFile} to disk on a background thread, coalescing multiple write requests
+ * made within a short window into a single write.
+ *
+ * <p>Writes synchronise on the config file, so any thread modifying the file's domains while a
+ * write may be in progress should do so while holding the config file's monitor.
+ */
+public class ConfigFileWriter implements AutoCloseable {
+
+    /** The config file being written. */
+    private final ConfigFile file;
+    /** The time to wait after the first request before writing. */
+    private final long delay;
+    /** The unit of {@link #delay}. */
+    private final TimeUnit unit;
+    /** The executor to perform writes on. */
+    private final ScheduledExecutorService executor;
+    /** Hook used to flush any pending write when the JVM shuts down. */
+    private final Thread shutdownHook;
+    /** The future for the next write, if one has been requested but not yet started. */
+    private CompletableFuture<Void> pending;
+    /** The scheduled task that will perform the pending write. */
+    private ScheduledFuture<?> scheduled;
+    /** The future for the write currently in progress, if any. */
+    private CompletableFuture<Void> inProgress;
+    /** Whether this writer has been closed. */
+    private boolean closed;
+
+    /**
+     * Creates a new writer for the specified config file, which will use its own background
+     * thread. Any pending write will be flushed if the JVM shuts down before the writer is
+     * closed.
+     *
+     * @param file The config file to write
+     * @param delay The time to wait after a write is first requested before writing
+     * @param unit The unit of the delay
+     */
+    public ConfigFileWriter(final ConfigFile file, final long delay, final TimeUnit unit) {
+        this.file = file;
+        this.delay = delay;
+        this.unit = unit;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "ConfigFile writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.shutdownHook = new Thread(this::flushQuietly, "ConfigFile writer shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Requests that the config file be written. If a write has already been requested and not
+     * yet started, this request is coalesced with it.
+     *
+     * @return A future which completes once the file has been written
+     */
+    public synchronized CompletableFuture<Void> requestWrite() {
+        if (closed) {
+            throw new IllegalStateException("Writer has been closed");
+        }
+
+        if (pending == null) {
+            pending = new CompletableFuture<>();
+            scheduled = executor.schedule(this::write, delay, unit);
+        }
+
+        return pending;
+    }
+
+    /**
+     * Starts any pending write immediately.
+     *
+     * @return A future which completes once all requested writes have been written, or
+     * immediately if there are none
+     */
+    public synchronized CompletableFuture<Void> flush() {
+        if (pending != null) {
+            scheduled.cancel(false);
+            final CompletableFuture<Void> future = pending;
+            executor.execute(this::write);
+            return future;
+        }
+
+        if (inProgress != null) {
+            return inProgress;
+        }
+
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Flushes any pending write, waits for it to complete, and stops the background thread.
+     *
+     * @throws IOException if the final write failed
+     */
+    @Override
+    public void close() throws IOException {
+        final CompletableFuture<Void> future;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            future = flush();
+            closed = true;
+        }
+
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ex) {
+            // The JVM is already shutting down; the hook will flush anyway.
+        }
+
+        try {
+            future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for write", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException("Unable to write config file", ex.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Performs the pending write, if there is one.
+     */
+    private void write() {
+        final CompletableFuture<Void> future;
+        synchronized (this) {
+            if (pending == null) {
+                return;
+            }
+
+            future = pending;
+            inProgress = future;
+            pending = null;
+            scheduled = null;
+        }
+
+        try {
+            synchronized (file) {
+                file.write();
+            }
+            future.complete(null);
+        } catch (IOException | RuntimeException ex) {
+            future.completeExceptionally(ex);
+        } finally {
+            synchronized (this) {
+                if (inProgress == future) {
+                    inProgress = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushes any pending write and waits for it, ignoring any errors.
+     */
+    private void flushQuietly() {
+        try {
+            flush().get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            // Nothing we can do while shutting down.
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes lines of bytes into strings, avoiding the cost of a general charset decoder for the
+ * common case of lines that only contain ASCII characters.
+ *
+ * <p>If the charset encodes ASCII characters as single bytes with the same values, lines made up
+ * entirely of bytes below 0x80 are converted to strings directly. Any other line is decoded with
+ * a decoder that is created once and reused. Malformed input is replaced.
+ *
+ * <p>Decoders are not thread safe, so each thread should use its own instance.
+ */
+final class LineDecoder {
+
+    /** The charset that lines are decoded from. */
+    private final Charset charset;
+    /** Whether ASCII-only lines can be converted directly. */
+    private final boolean asciiCompatible;
+    /** The decoder used for lines that are not entirely ASCII, created when first needed. */
+    private CharsetDecoder decoder;
+    /** Buffer used to copy bytes out of buffers that are not backed by an array. */
+    private byte[] scratch = new byte[0];
+
+    /**
+     * Creates a new decoder for the specified charset.
+     *
+     * @param charset The charset that lines are decoded from
+     */
+    LineDecoder(final Charset charset) {
+        this.charset = charset;
+        this.asciiCompatible = isAsciiCompatible(charset);
+    }
+
+    /**
+     * Determines whether a charset encodes every ASCII character as a single byte with the same
+     * value, and never uses bytes below 0x80 as part of a longer sequence.
+     *
+     * @param charset The charset to check
+     * @return True if the charset is compatible with ASCII
+     */
+    static boolean isAsciiCompatible(final Charset charset) {
+        if (!charset.canEncode() || (charset.newEncoder().maxBytesPerChar() != 1
+                && !StandardCharsets.UTF_8.equals(charset))) {
+            return false;
+        }
+
+        final char[] chars = new char[0x80];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) i;
+        }
+        final byte[] bytes = new String(chars).getBytes(charset);
+        if (bytes.length != chars.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes part of an array.
+     *
+     * @param bytes The array containing the line
+     * @param offset The offset of the line within the array
+     * @param length The length of the line in bytes
+     * @return The decoded line
+     */
+    String decode(final byte[] bytes, final int offset, final int length) {
+        if (asciiCompatible && isAscii(bytes, offset, length)) {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+        return decodeGeneral(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Decodes the remaining bytes in a buffer. The buffer's position is not changed.
+     *
+     * @param buffer The buffer containing the line
+     * @return The decoded line
+     */
+    String decode(final ByteBuffer buffer) {
+        final int length = buffer.remaining();
+        if (buffer.hasArray()) {
+            return decode(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+        }
+
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.duplicate().get(scratch, 0, length);
+        return decode(scratch, 0, length);
+    }
+
+    /**
+     * Determines whether part of an array only contains ASCII bytes.
+     *
+     * @param bytes The array to check
+     * @param offset The offset to start checking at
+     * @param length The number of bytes to check
+     * @return True if none of the bytes have their high bit set
+     */
+    private static boolean isAscii(final byte[] bytes, final int offset, final int length) {
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a buffer using the charset's decoder.
+     *
+     * @param buffer The buffer to decode
+     * @return The decoded line
+     */
+    private String decodeGeneral(final ByteBuffer buffer) {
+        if (decoder == null) {
+            decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        try {
+            final CharBuffer chars = decoder.reset().decode(buffer);
+            return chars.toString();
+        } catch (CharacterCodingException ex) {
+            // Can't happen, as errors are replaced rather than reported.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import java.util.Objects;
+
+/**
+ * Describes a line of a file that matched a search.
+ */
+public class LineMatch {
+
+    private final long lineOffset;
+    private final long matchOffset;
+    private final String line;
+
+    public LineMatch(final long lineOffset, final long matchOffset, final String line) {
+        this.lineOffset = lineOffset;
+        this.matchOffset = matchOffset;
+        this.line = line;
+    }
+
+    /**
+     * Gets the byte offset in the file at which the matching line starts.
+     *
+     * @return The offset of the start of the line
+     */
+    public long getLineOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * Gets the byte offset in the file of the last match within the line.
+     *
+     * @return The offset of the match
+     */
+    public long getMatchOffset() {
+        return matchOffset;
+    }
+
+    /**
+     * Gets the content of the matching line.
+     *
+     * @return The line's content
+     */
+    public String getLine() {
+        return line;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (o instanceof LineMatch) {
+            final LineMatch match = (LineMatch) o;
+            return lineOffset == match.getLineOffset()
+                    && matchOffset == match.getMatchOffset()
+                    && Objects.equals(line, match.getLine());
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lineOffset, matchOffset, line);
+    }
+
+    @Override
+    public String toString() {
+        return "LineMatch{lineOffset=" + lineOffset + ", matchOffset=" + matchOffset
+                + ", line='" + line + "'}";
+    }
+}
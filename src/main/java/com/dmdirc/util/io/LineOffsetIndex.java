@@ -0,0 +1,471 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToLongFunction;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nullable;
+
+/**
+ * Maintains an index of the byte offsets of lines in a file, such as a log, so that arbitrary
+ * lines can be found without scanning the file from one end.
+ *
+ * <p>The offset of every <i>n</i>th line is recorded, along with an optional timestamp taken from
+ * that line. The index is stored in a small sidecar file next to the indexed file, and when it is
+ * updated only content added to the file since the index was last saved is scanned. If the file
+ * has been truncated or rewritten, the index is rebuilt from scratch. Lines are terminated by
+ * line feeds, and carriage returns are removed from lines that are read.
+ */
+public class LineOffsetIndex {
+
+    /** The default number of lines between recorded offsets. */
+    public static final int DEFAULT_INTERVAL = 1024;
+
+    /** The magic number at the start of every index file. */
+    private static final int MAGIC = 0x444d4c49;
+    /** The version of the index file format. */
+    private static final int VERSION = 1;
+    /** The number of bytes to read from the file at a time. */
+    private static final int BLOCK_SIZE = 64 * 1024;
+    /** The number of bytes before the end of the indexed content used to detect rewrites. */
+    private static final int TAIL_LENGTH = 4096;
+
+    /** The file being indexed. */
+    private final Path path;
+    /** The number of lines between recorded offsets. */
+    private final int interval;
+    /** The function used to get timestamps from lines, or null if timestamps aren't indexed. */
+    @Nullable private final ToLongFunction<String> timestamps;
+    /** The offset of every {@link #interval}th line. */
+    private long[] offsets = new long[16];
+    /** The timestamp of every {@link #interval}th line, if timestamps are indexed. */
+    private long[] times = new long[16];
+    /** The number of recorded offsets. */
+    private int entries;
+    /** The number of bytes of the file that have been indexed. */
+    private long indexedLength;
+    /** The number of line feeds in the indexed content. */
+    private long lineFeeds;
+    /** The offset at which the last line in the indexed content starts. */
+    private long lastLineStart;
+    /** The checksum of the tail of the indexed content. */
+    private long tailChecksum;
+    /** The decoder used to decode lines. */
+    private final LineDecoder decoder;
+    /** Whether the sidecar file has been read. */
+    private boolean loaded;
+
+    /**
+     * Creates a new index for the specified UTF-8 file, recording every
+     * {@value #DEFAULT_INTERVAL}th line without timestamps. The index is not read or built until
+     * {@link #update()} is called.
+     *
+     * @param path The file to index
+     */
+    public LineOffsetIndex(final Path path) {
+        this(path, DEFAULT_INTERVAL, StandardCharsets.UTF_8, null);
+    }
+
+    /**
+     * Creates a new index for the specified file. The index is not read or built until
+     * {@link #update()} is called.
+     *
+     * @param path The file to index
+     * @param interval The number of lines between recorded offsets
+     * @param charset The charset used to decode lines
+     * @param timestamps Function used to get a timestamp from each recorded line, or null to not
+     * record timestamps. Timestamps should not decrease through the file.
+     */
+    public LineOffsetIndex(final Path path, final int interval, final Charset charset,
+            @Nullable final ToLongFunction<String> timestamps) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        this.path = path;
+        this.interval = interval;
+        this.timestamps = timestamps;
+        this.decoder = new LineDecoder(charset);
+    }
+
+    /**
+     * Returns the path that the index of the specified file is stored at.
+     *
+     * @param path The path of the indexed file
+     * @return The path of the index
+     */
+    public static Path getIndexPath(final Path path) {
+        return path.resolveSibling(path.getFileName() + ".lineindex");
+    }
+
+    /**
+     * Brings the index up to date with the file. The first time this is called the stored index
+     * is read, if there is one. Any content added to the file since the index was last updated is
+     * then scanned, and the stored index is replaced if anything changed. Failures writing the
+     * stored index are ignored, as it can always be rebuilt.
+     *
+     * @throws IOException If the file could not be read
+     */
+    public void update() throws IOException {
+        if (!loaded) {
+            load();
+            loaded = true;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < indexedLength || (indexedLength > 0
+                    && getTailChecksum(channel, indexedLength) != tailChecksum)) {
+                clear();
+            }
+            if (size == indexedLength) {
+                return;
+            }
+
+            scan(channel, size);
+        }
+
+        try {
+            save();
+        } catch (IOException ex) {
+            // The index is only a cache, so carry on without it.
+        }
+    }
+
+    /**
+     * Gets the number of lines in the indexed content, including any final line that has not
+     * been terminated.
+     *
+     * @return The number of lines that have been indexed
+     */
+    public long getLineCount() {
+        return indexedLength > lastLineStart ? lineFeeds + 1 : lineFeeds;
+    }
+
+    /**
+     * Gets the byte offset at which the specified line starts. The file is read forwards from
+     * the nearest recorded offset to find the line.
+     *
+     * @param line The number of the line, starting at 0
+     * @return The offset of the start of the line
+     * @throws IOException If the file could not be read
+     * @throws IndexOutOfBoundsException If the line has not been indexed
+     */
+    public long getOffset(final long line) throws IOException {
+        if (line < 0 || line > lineFeeds) {
+            throw new IndexOutOfBoundsException("Line: " + line + ", Lines: " + getLineCount());
+        }
+
+        final int entry = (int) (line / interval);
+        long offset = offsets[entry];
+        long remaining = line - (long) entry * interval;
+        if (remaining == 0) {
+            return offset;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+            final byte[] bytes = buffer.array();
+            while (true) {
+                buffer.clear();
+                final int read = channel.read(buffer, offset);
+                if (read <= 0) {
+                    throw new EOFException("File was truncated");
+                }
+                for (int i = 0; i < read; i++) {
+                    if (bytes[i] == '\n' && --remaining == 0) {
+                        return offset + i + 1;
+                    }
+                }
+                offset += read;
+            }
+        }
+    }
+
+    /**
+     * Finds the last recorded line whose timestamp is not after the given time. Reading forward
+     * from the returned line will therefore reach the first line at or after the given time
+     * within {@link #interval} lines.
+     *
+     * @param timestamp The time to search for
+     * @return The number of the line, or 0 if every recorded line is after the given time
+     * @throws IllegalStateException If timestamps are not being recorded
+     */
+    public long findLine(final long timestamp) {
+        if (timestamps == null) {
+            throw new IllegalStateException("Timestamps are not being recorded");
+        }
+
+        int low = 0;
+        int high = completeEntries() - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (times[middle] <= timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return Math.max(high, 0) * (long) interval;
+    }
+
+    /**
+     * Reads lines from the file, starting at the specified line.
+     *
+     * @param line The number of the first line to read, starting at 0
+     * @param count The maximum number of lines to read
+     * @return The lines read, which may be fewer than requested if the end of the indexed
+     * content is reached
+     * @throws IOException If the file could not be read
+     * @throws IndexOutOfBoundsException If the line has not been indexed
+     */
+    public List<String> readLines(final long line, final int count) throws IOException {
+        final long start = getOffset(line);
+        final List<String> result = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+            final ByteArrayOutputStream current = new ByteArrayOutputStream();
+            long offset = start;
+            while (result.size() < count && offset < indexedLength) {
+                buffer.clear();
+                buffer.limit((int) Math.min(BLOCK_SIZE, indexedLength - offset));
+                final int read = channel.read(buffer, offset);
+                if (read <= 0) {
+                    throw new EOFException("File was truncated");
+                }
+                offset += read;
+                final byte[] bytes = buffer.array();
+                for (int i = 0; i < read && result.size() < count; i++) {
+                    if (bytes[i] == '\n') {
+                        result.add(decoder.decode(current.toByteArray(), 0, current.size()));
+                        current.reset();
+                    } else if (bytes[i] != '\r') {
+                        current.write(bytes[i]);
+                    }
+                }
+            }
+            if (result.size() < count && current.size() > 0) {
+                result.add(decoder.decode(current.toByteArray(), 0, current.size()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Scans the file from the end of the indexed content, recording the offsets of lines.
+     *
+     * @param channel The channel to read the file from
+     * @param size The size of the file
+     * @throws IOException If the file could not be read
+     */
+    private void scan(final FileChannel channel, final long size) throws IOException {
+        if (entries == 0) {
+            addEntry(0);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        final byte[] bytes = buffer.array();
+        long offset = indexedLength;
+        while (offset < size) {
+            buffer.clear();
+            buffer.limit((int) Math.min(BLOCK_SIZE, size - offset));
+            final int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '\n') {
+                    if (lineFeeds % interval == 0) {
+                        recordTimestamp(channel, (int) (lineFeeds / interval), offset + i);
+                    }
+                    lineFeeds++;
+                    lastLineStart = offset + i + 1;
+                    if (lineFeeds % interval == 0) {
+                        addEntry(lastLineStart);
+                    }
+                }
+            }
+            offset += read;
+        }
+
+        indexedLength = offset;
+        tailChecksum = getTailChecksum(channel, indexedLength);
+    }
+
+    /**
+     * Records the timestamp of a recorded line, which has just been terminated.
+     *
+     * @param channel The channel to read the line from
+     * @param entry The index of the recorded line
+     * @param end The offset of the line feed terminating the line
+     * @throws IOException If the line could not be read
+     */
+    private void recordTimestamp(final FileChannel channel, final int entry, final long end)
+            throws IOException {
+        if (timestamps == null) {
+            return;
+        }
+
+        final long start = offsets[entry];
+        final ByteBuffer line = ByteBuffer.allocate((int) (end - start));
+        while (line.hasRemaining()) {
+            if (channel.read(line, start + line.position()) < 0) {
+                throw new EOFException("File was truncated");
+            }
+        }
+        int length = line.limit();
+        if (length > 0 && line.get(length - 1) == '\r') {
+            length--;
+        }
+        times[entry] = timestamps.applyAsLong(decoder.decode(line.array(), 0, length));
+    }
+
+    /**
+     * Adds a recorded offset, growing the arrays if required.
+     *
+     * @param offset The offset of the start of the line
+     */
+    private void addEntry(final long offset) {
+        if (entries == offsets.length) {
+            offsets = Arrays.copyOf(offsets, entries * 2);
+            times = Arrays.copyOf(times, entries * 2);
+        }
+        offsets[entries++] = offset;
+    }
+
+    /**
+     * Gets the number of recorded lines that have been terminated, and so have timestamps.
+     *
+     * @return The number of complete entries
+     */
+    private int completeEntries() {
+        return lineFeeds == 0 ? 0 : (int) Math.min(entries, (lineFeeds - 1) / interval + 1);
+    }
+
+    /**
+     * Discards everything in the index.
+     */
+    private void clear() {
+        entries = 0;
+        indexedLength = 0;
+        lineFeeds = 0;
+        lastLineStart = 0;
+        tailChecksum = 0;
+    }
+
+    /**
+     * Calculates a checksum of the last few kilobytes of the indexed content, used to detect
+     * whether the file has been rewritten since it was indexed.
+     *
+     * @param channel The channel to read the file from
+     * @param end The length of the indexed content
+     * @return The checksum of the tail of the content
+     * @throws IOException If the file could not be read
+     */
+    private static long getTailChecksum(final FileChannel channel, final long end)
+            throws IOException {
+        final long start = Math.max(0, end - TAIL_LENGTH);
+        final ByteBuffer tail = ByteBuffer.allocate((int) (end - start));
+        while (tail.hasRemaining()) {
+            if (channel.read(tail, start + tail.position()) < 0) {
+                return -1;
+            }
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(tail.array());
+        return crc.getValue();
+    }
+
+    /**
+     * Reads the stored index, if it exists, is intact, and was created with the same settings.
+     */
+    private void load() {
+        try (DataInputStream in = AtomicFile.readChecksummed(getIndexPath(path))) {
+            if (in == null) {
+                return;
+            }
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readInt() != interval || in.readBoolean() != (timestamps != null)) {
+                return;
+            }
+
+            final long length = in.readLong();
+            final long feeds = in.readLong();
+            final long lastLine = in.readLong();
+            final long checksum = in.readLong();
+            final int count = in.readInt();
+            final long[] storedOffsets = new long[Math.max(count, 16)];
+            final long[] storedTimes = new long[storedOffsets.length];
+            for (int i = 0; i < count; i++) {
+                storedOffsets[i] = in.readLong();
+                if (timestamps != null) {
+                    storedTimes[i] = in.readLong();
+                }
+            }
+
+            indexedLength = length;
+            lineFeeds = feeds;
+            lastLineStart = lastLine;
+            tailChecksum = checksum;
+            offsets = storedOffsets;
+            times = storedTimes;
+            entries = count;
+        } catch (IOException | RuntimeException ex) {
+            clear();
+        }
+    }
+
+    /**
+     * Writes the index to its sidecar file, replacing any existing index.
+     *
+     * @throws IOException If the index could not be written
+     */
+    private void save() throws IOException {
+        AtomicFile.replaceChecksummed(getIndexPath(path), out -> {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(interval);
+            out.writeBoolean(timestamps != null);
+            out.writeLong(indexedLength);
+            out.writeLong(lineFeeds);
+            out.writeLong(lastLineStart);
+            out.writeLong(tailChecksum);
+            out.writeInt(entries);
+            for (int i = 0; i < entries; i++) {
+                out.writeLong(offsets[i]);
+                if (timestamps != null) {
+                    out.writeLong(times[i]);
+                }
+            }
+        });
+    }
+
+}
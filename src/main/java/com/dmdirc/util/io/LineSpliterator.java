@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import java.nio.charset.Charset;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator over the lines in a range of a {@link MappedFile}. When split, the range is
+ * divided at the first line boundary after its midpoint, so each half can be decoded
+ * independently, for example by different workers of a parallel stream.
+ *
+ * <p>Lines are split in the same way as {@link java.io.BufferedReader#readLine()}.
+ */
+class LineSpliterator implements Spliterator<String> {
+
+    /** The smallest range, in bytes, that will be split further. */
+    private static final long MINIMUM_SPLIT = 1 << 16;
+
+    /** The file containing the lines. */
+    private final MappedFile file;
+    /** The charset used to decode lines. */
+    private final Charset charset;
+    /** The decoder used to decode lines. */
+    private final LineDecoder decoder;
+    /** The size of the smallest range that will be split further. */
+    private final long minimumSplit;
+    /** The offset of the next line to be returned. */
+    private long offset;
+    /** The offset at which this spliterator's range ends. */
+    private final long end;
+
+    /**
+     * Creates a new spliterator over the given range of the file. The range must start and end
+     * on line boundaries.
+     *
+     * @param file The file containing the lines
+     * @param charset The charset used to decode lines
+     * @param minimumSplit The size of the smallest range that will be split further
+     * @param start The offset at which the range starts
+     * @param end The offset at which the range ends
+     */
+    LineSpliterator(final MappedFile file, final Charset charset, final long minimumSplit,
+            final long start, final long end) {
+        this.file = file;
+        this.charset = charset;
+        this.decoder = new LineDecoder(charset);
+        this.minimumSplit = minimumSplit;
+        this.offset = start;
+        this.end = end;
+    }
+
+    /**
+     * Creates a new spliterator over all of the lines in the file.
+     *
+     * @param file The file containing the lines
+     * @param charset The charset used to decode lines
+     */
+    LineSpliterator(final MappedFile file, final Charset charset) {
+        this(file, charset, MINIMUM_SPLIT, 0, file.size());
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super String> action) {
+        if (offset >= end) {
+            return false;
+        }
+
+        final long terminator = file.findTerminator(offset, end);
+        if (terminator < 0) {
+            action.accept(file.decode(offset, end, decoder));
+            offset = end;
+        } else {
+            action.accept(file.decode(offset, terminator, decoder));
+            offset = file.skipTerminator(terminator);
+        }
+        return true;
+    }
+
+    @Override
+    public Spliterator<String> trySplit() {
+        if (end - offset < minimumSplit) {
+            return null;
+        }
+
+        final long terminator = file.findTerminator(offset + (end - offset) / 2, end);
+        if (terminator < 0) {
+            return null;
+        }
+
+        final long split = file.skipTerminator(terminator);
+        if (split >= end) {
+            return null;
+        }
+
+        final Spliterator<String> prefix =
+                new LineSpliterator(file, charset, minimumSplit, offset, split);
+        offset = split;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - offset;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only memory mapping of a file, split into as many regions as are needed to map files
+ * larger than a single buffer can address.
+ *
+ * <p>If the file's file system does not support mapping, the regions are read into heap buffers
+ * instead. The file must not be truncated while it is mapped.
+ */
+final class MappedFile {
+
+    /** The default number of bits used to address bytes within a single mapped region. */
+    static final int DEFAULT_REGION_BITS = 30;
+
+    /** The mapped regions of the file, each of which is 2^regionBits bytes except the last. */
+    private final ByteBuffer[] regions;
+    /** The number of bits used to address bytes within a region. */
+    private final int regionBits;
+    /** The total size of the file. */
+    private final long size;
+
+    /**
+     * Creates a new mapped file over the given regions.
+     *
+     * @param regions The regions containing the file's content
+     * @param regionBits The number of bits used to address bytes within a region
+     * @param size The total size of the file
+     */
+    private MappedFile(final ByteBuffer[] regions, final int regionBits, final long size) {
+        this.regions = regions;
+        this.regionBits = regionBits;
+        this.size = size;
+    }
+
+    /**
+     * Maps the specified file in regions of the given size.
+     *
+     * @param path The file to map
+     * @param regionBits The number of bits used to address bytes within a region
+     * @return The mapped file
+     * @throws IOException If the file could not be read
+     */
+    static MappedFile open(final Path path, final int regionBits) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final long regionSize = 1L << regionBits;
+            final ByteBuffer[] regions =
+                    new ByteBuffer[(int) ((size + regionSize - 1) >>> regionBits)];
+            for (int i = 0; i < regions.length; i++) {
+                final long position = i * regionSize;
+                regions[i] = map(channel, position, Math.min(regionSize, size - position));
+            }
+            return new MappedFile(regions, regionBits, size);
+        }
+    }
+
+    /**
+     * Determines whether files in the given charset can be split into lines by looking for
+     * carriage return and line feed bytes.
+     *
+     * @param charset The charset to check
+     * @return True if line terminators are encoded as single ASCII bytes in the charset
+     */
+    static boolean isSupported(final Charset charset) {
+        return LineDecoder.isAsciiCompatible(charset);
+    }
+
+    /**
+     * Maps part of a channel into memory. If the channel's file system does not support
+     * mapping, the region is read into a heap buffer instead.
+     *
+     * @param channel The channel to map
+     * @param position The offset of the region to map
+     * @param length The length of the region to map
+     * @return A buffer containing the region
+     * @throws IOException If the region could not be read
+     */
+    private static ByteBuffer map(final FileChannel channel, final long position,
+            final long length) throws IOException {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        } catch (UnsupportedOperationException ex) {
+            final ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("File truncated while reading");
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * Gets the size of the file.
+     *
+     * @return The size of the file in bytes
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Retrieves the byte at the specified offset in the file.
+     *
+     * @param offset The offset of the byte
+     * @return The byte at that offset
+     */
+    byte get(final long offset) {
+        final long mask = (1L << regionBits) - 1;
+        return regions[(int) (offset >>> regionBits)].get((int) (offset & mask));
+    }
+
+    /**
+     * Finds the first carriage return or line feed within the given range of the file.
+     *
+     * @param from The offset to start searching at (inclusive)
+     * @param to The offset to stop searching at (exclusive)
+     * @return The offset of the first line terminator, or -1 if there is none in the range
+     */
+    long findTerminator(final long from, final long to) {
+        long offset = from;
+        while (offset < to) {
+            final int region = (int) (offset >>> regionBits);
+            final ByteBuffer buffer = regions[region];
+            final long base = (long) region << regionBits;
+            final int limit = (int) Math.min(buffer.limit(), to - base);
+            for (int i = (int) (offset - base); i < limit; i++) {
+                final byte current = buffer.get(i);
+                if (current == '\n' || current == '\r') {
+                    return base + i;
+                }
+            }
+            offset = base + limit;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the offset at which the line following the terminator at the given offset starts,
+     * treating a carriage return followed by a line feed as a single terminator.
+     *
+     * @param terminator The offset of a carriage return or line feed
+     * @return The offset at which the next line starts
+     */
+    long skipTerminator(final long terminator) {
+        if (get(terminator) == '\r' && terminator + 1 < size && get(terminator + 1) == '\n') {
+            return terminator + 2;
+        }
+        return terminator + 1;
+    }
+
+    /**
+     * Finds the first occurrence of a byte within the given range of the file.
+     *
+     * @param value The byte to search for
+     * @param from The offset to start searching at (inclusive)
+     * @param to The offset to stop searching at (exclusive)
+     * @return The offset of the first occurrence of the byte, or -1 if there is none in the range
+     */
+    long indexOf(final byte value, final long from, final long to) {
+        long offset = from;
+        while (offset < to) {
+            final int region = (int) (offset >>> regionBits);
+            final ByteBuffer buffer = regions[region];
+            final long base = (long) region << regionBits;
+            final int limit = (int) Math.min(buffer.limit(), to - base);
+            for (int i = (int) (offset - base); i < limit; i++) {
+                if (buffer.get(i) == value) {
+                    return base + i;
+                }
+            }
+            offset = base + limit;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the last occurrence of a byte within the given range of the file.
+     *
+     * @param value The byte to search for
+     * @param from The offset to stop searching at (inclusive)
+     * @param to The offset to start searching backwards from (exclusive)
+     * @return The offset of the last occurrence of the byte, or -1 if there is none in the range
+     */
+    long lastIndexOf(final byte value, final long from, final long to) {
+        long offset = to - 1;
+        while (offset >= from) {
+            final int region = (int) (offset >>> regionBits);
+            final ByteBuffer buffer = regions[region];
+            final long base = (long) region << regionBits;
+            final int lower = (int) Math.max(from - base, 0);
+            for (int i = (int) (offset - base); i >= lower; i--) {
+                if (buffer.get(i) == value) {
+                    return base + i;
+                }
+            }
+            offset = base - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets a buffer containing the given range of the file, between its position and limit. If
+     * the range lies within a single region the buffer shares its content, otherwise the range
+     * is copied into a new buffer.
+     *
+     * @param start The offset the range starts at (inclusive)
+     * @param end The offset the range ends at (exclusive)
+     * @return A buffer containing the range
+     */
+    ByteBuffer slice(final long start, final long end) {
+        if (end == start) {
+            return ByteBuffer.allocate(0);
+        }
+
+        final int region = (int) (start >>> regionBits);
+        if (region == (int) ((end - 1) >>> regionBits)) {
+            final ByteBuffer range = regions[region].duplicate();
+            final int offset = (int) (start - ((long) region << regionBits));
+            range.limit(offset + (int) (end - start)).position(offset);
+            return range;
+        }
+
+        final byte[] range = new byte[(int) (end - start)];
+        for (int i = 0; i < range.length; i++) {
+            range[i] = get(start + i);
+        }
+        return ByteBuffer.wrap(range);
+    }
+
+    /**
+     * Decodes the given range of the file.
+     *
+     * @param start The offset to start decoding at (inclusive)
+     * @param end The offset to stop decoding at (exclusive)
+     * @param decoder The decoder to decode with
+     * @return The decoded text
+     */
+    String decode(final long start, final long end, final LineDecoder decoder) {
+        if (end == start) {
+            return "";
+        }
+        return decoder.decode(slice(start, end));
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * An unmodifiable list of the lines in a file, backed by a memory mapping of the file.
+ *
+ * <p>When created, the file is scanned once to build an index of the offset at which each line
+ * starts. Lines are only decoded when they are retrieved, and are not retained afterwards, so the
+ * memory used by the list is proportional to the number of lines rather than the size of the file.
+ *
+ * <p>Lines are split in the same way as {@link java.io.BufferedReader#readLine()}. Malformed input
+ * is replaced rather than reported, as it is not discovered until the line is decoded. The file
+ * must not be truncated while the list is in use.
+ */
+class MappedLineList extends AbstractList<String> implements RandomAccess {
+
+    /** The number of lines the index can initially hold. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The file containing the lines. */
+    private final MappedFile file;
+    /** The decoder used by each thread to decode lines. */
+    private final ThreadLocal<LineDecoder> decoder;
+    /** The offset at which each line starts. */
+    private long[] starts;
+    /** The number of lines in the file. */
+    private int count;
+
+    /**
+     * Creates a new list over the given file, and builds the line index.
+     *
+     * @param file The file containing the lines
+     * @param charset The charset used to decode lines
+     */
+    private MappedLineList(final MappedFile file, final Charset charset) {
+        this.file = file;
+        this.decoder = ThreadLocal.withInitial(() -> new LineDecoder(charset));
+        this.starts = new long[INITIAL_CAPACITY];
+        index();
+    }
+
+    /**
+     * Maps the specified file and indexes its lines.
+     *
+     * @param path The file to map
+     * @param charset The charset used to decode lines
+     * @return A list of the lines in the file
+     * @throws IOException If the file could not be read
+     */
+    static MappedLineList open(final Path path, final Charset charset) throws IOException {
+        return open(path, charset, MappedFile.DEFAULT_REGION_BITS);
+    }
+
+    /**
+     * Maps the specified file in regions of the given size, and indexes its lines.
+     *
+     * @param path The file to map
+     * @param charset The charset used to decode lines
+     * @param regionBits The number of bits used to address bytes within a region
+     * @return A list of the lines in the file
+     * @throws IOException If the file could not be read
+     */
+    static MappedLineList open(final Path path, final Charset charset, final int regionBits)
+            throws IOException {
+        return new MappedLineList(MappedFile.open(path, regionBits), charset);
+    }
+
+    /**
+     * Scans the file and records the offset at which each line starts.
+     */
+    private void index() {
+        final long size = file.size();
+        long offset = 0;
+        while (offset < size) {
+            addStart(offset);
+            final long terminator = file.findTerminator(offset, size);
+            if (terminator < 0) {
+                break;
+            }
+            offset = file.skipTerminator(terminator);
+        }
+    }
+
+    /**
+     * Adds the start of a line to the index, growing it if required.
+     *
+     * @param offset The offset at which the line starts
+     */
+    private void addStart(final long offset) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = offset;
+    }
+
+    @Override
+    public String get(final int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+
+        final long start = starts[index];
+        long end = index + 1 < count ? starts[index + 1] : file.size();
+        if (end > start && file.get(end - 1) == '\n') {
+            end--;
+        }
+        if (end > start && file.get(end - 1) == '\r') {
+            end--;
+        }
+        return file.decode(start, end, decoder.get());
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+}
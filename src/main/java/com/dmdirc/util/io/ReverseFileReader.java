@@ -20,28 +20,72 @@ package com.dmdirc.util.io;
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Reads a file in reverse.
+ *
+ * <p>The file is read backwards in large blocks into a single reusable buffer, which is scanned
+ * for line feeds. Carriage returns are removed from the lines that are returned.
  */
 public class ReverseFileReader implements AutoCloseable {
 
+    /** Number of bytes to read from the file at a time. */
+    private static final int BLOCK_SIZE = 64 * 1024;
+    /** The shortest time to wait between checks for appended lines, in milliseconds. */
+    private static final long MIN_POLL_INTERVAL = 10;
+    /** The longest time to wait between checks for appended lines, in milliseconds. */
+    private static final long MAX_POLL_INTERVAL = 1000;
+
     /** Path to the file we're reading. */
     private final Path file;
     /** File to manipulate. */
-    private SeekableByteChannel byteChannel;
+    private FileChannel byteChannel;
     /** Number of bytes to skip backwards at a time. */
     private byte seekLength = 50;
+    /** The charset the file is read in. */
+    private final Charset charset;
+    /** Decoder used to decode lines. */
+    private final LineDecoder decoder;
+    /** Buffer holding the most recently read block of the file. */
+    private final ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_SIZE);
+    /** The offset in the file of the first byte in {@link #block}. */
+    private long blockStart;
+    /** Buffer used to assemble the bytes of a line before decoding it. */
+    private byte[] line = new byte[256];
+    /** The offset in the file that the next line ends at. */
+    private long position;
+    /** Index of lines in a mapping of the file, created when random access is first used. */
+    private ReverseLineIndex index;
+    /** Buffer used to read lines appended to the file, created when first needed. */
+    private ByteBuffer appended;
+    /** The offset in the file up to which appended content has been read. */
+    private long appendedOffset;
+    /** The bytes of an incomplete line at the end of the appended content. */
+    private byte[] partial = new byte[256];
+    /** The number of bytes in {@link #partial}. */
+    private int partialLength;
+    /** The key identifying the file that is open, used to detect rotation. */
+    private Object fileKey;
+    /** The time to wait before next checking for appended lines, in milliseconds. */
+    private long pollInterval = MIN_POLL_INTERVAL;
+    /** List reused to collect lines before appending them to a builder. */
+    private final List<String> batch = new ArrayList<>();
 
     /**
-     * Create a new ReverseFileReader.
+     * Create a new ReverseFileReader, which will read the file as UTF-8.
      *
      * @param file File to read
      *
@@ -50,13 +94,33 @@ public class ReverseFileReader implements AutoCloseable {
      * @throws IOException If there is an error seeking to the end of the file.
      */
     public ReverseFileReader(final Path file) throws SecurityException, IOException {
+        this(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create a new ReverseFileReader.
+     *
+     * @param file File to read
+     * @param charset The charset to read the file in
+     *
+     * @throws SecurityException If a security manager exists and its checkRead method denies
+     * read access to the file.
+     * @throws IOException If there is an error seeking to the end of the file.
+     */
+    public ReverseFileReader(final Path file, final Charset charset)
+            throws SecurityException, IOException {
         this.file = file;
-        byteChannel = Files.newByteChannel(file, StandardOpenOption.READ);
+        this.charset = charset;
+        this.decoder = new LineDecoder(charset);
+        byteChannel = FileChannel.open(file, StandardOpenOption.READ);
+        fileKey = getFileKey();
         reset();
     }
 
     /**
-     * Reset the file pointer to the end of the file.
+     * Reset the file pointer to the end of the file. The open file is reused unless a different
+     * file has replaced it at this reader's path, in which case the old file is closed and the
+     * new one opened.
      *
      * @throws IOException If there is an error seeking, or the file is closed.
      */
@@ -64,15 +128,27 @@ public class ReverseFileReader implements AutoCloseable {
         if (!byteChannel.isOpen()) {
             throw new IOException("Channel has been closed.");
         }
-        byteChannel = Files.newByteChannel(file, StandardOpenOption.READ);
-        byteChannel.position(byteChannel.size());
+        final Object key = getFileKey();
+        if (key != null && !key.equals(fileKey)) {
+            byteChannel.close();
+            byteChannel = FileChannel.open(file, StandardOpenOption.READ);
+            fileKey = key;
+        }
+        position = byteChannel.size();
+        block.clear().limit(0);
+        blockStart = position;
+        index = null;
+        appendedOffset = position;
+        partialLength = 0;
     }
 
     /**
      * Get the current seekLength.
      *
      * @return current seekLength
+     * @deprecated The file is now read in fixed size blocks, and the seek length is ignored.
      */
+    @Deprecated
     public byte getSeekLength() {
         return seekLength;
     }
@@ -81,7 +157,9 @@ public class ReverseFileReader implements AutoCloseable {
      * Set the seekLength.
      *
      * @param newValue New value for seekLength
+     * @deprecated The file is now read in fixed size blocks, and the seek length is ignored.
      */
+    @Deprecated
     public void setSeekLength(final byte newValue) {
         seekLength = newValue;
     }
@@ -91,6 +169,7 @@ public class ReverseFileReader implements AutoCloseable {
         if (byteChannel.isOpen()) {
             byteChannel.close();
         }
+        index = null;
     }
 
     /**
@@ -103,85 +182,403 @@ public class ReverseFileReader implements AutoCloseable {
         if (!byteChannel.isOpen()) {
             throw new IOException("Channel has been closed.");
         }
-        // Used to store result to output.
-        final ArrayList<Byte> line = new ArrayList<>(seekLength);
-        // Check current position, if 0 we are at the start of the file
-        // and should throw an exception.
-        final long startfp = byteChannel.position();
-        if (startfp == 0) {
+        if (position == 0) {
             throw new EOFException("Reached Start of file");
         }
 
-        // Keep looping until we get a full line, or the end of the file
-        boolean keepLooping = true;
-        while (keepLooping) {
-            // Get Current Position
-            long fp = byteChannel.position();
-
-            // Check how far to seek backwards (seekLength or to the start of the file)
-            final int seekDistance;
-            if (fp < seekLength) {
-                // Seek to the start of the file;
-                seekDistance = (int) fp;
-                fp = 0;
-            } else {
-                // Seek to position current-seekLength
-                seekDistance = seekLength;
-                fp -= seekDistance;
-            }
-            // Seek!
-            byteChannel.position(fp);
-
-            final ByteBuffer bytes = ByteBuffer.allocate(seekDistance);
-            // Read into the bytes array
-            byteChannel.read(bytes);
-
-            // And loop looking for data
-            // This uses seekDistance so that only wanted data is checked.
-            boolean gotNewLine = false;
-            for (int i = seekDistance - 1; i >= 0; --i) {
-                // Check for New line Character, or a non carriage-return char
-                if (bytes.get(i) == '\n') {
-                    // Seek to the location of this character and exit this loop.
-                    byteChannel.position(fp + i);
-                    gotNewLine = true;
-                    break;
-                } else if (bytes.get(i) != '\r') {
-                    // Add to the result, the loop will continue going.
-                    line.add(0, bytes.get(i));
-                }
+        final long end = position;
+        final long newline = findNewline(end);
+        final long start = newline + 1;
+        position = Math.max(newline, 0);
+
+        if (start >= blockStart && end <= blockStart + block.limit()) {
+            return decode(block, (int) (start - blockStart), (int) (end - blockStart));
+        }
+
+        // The line spans more than one block, so read it in one go.
+        final ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        readFully(buffer, start);
+        return decode(buffer, 0, buffer.limit());
+    }
+
+    /**
+     * Gets a line by its position from the end of the file, where 0 is the last line. This does
+     * not affect the lines returned by {@link #getNextLine()}.
+     *
+     * <p>The first time this is used after the reader is created or reset, the file is memory
+     * mapped. Lines are then indexed backwards from the end of the file as far as they are
+     * requested, so each line is only scanned once however many times it is retrieved. Any
+     * changes to the file after it is mapped are not seen until the reader is reset.
+     *
+     * @param line The number of the line from the end of the file
+     * @return The requested line
+     * @throws IOException If the file is closed or could not be mapped
+     * @throws EOFException If the file does not have that many lines
+     */
+    public String getLineFromEnd(final int line) throws IOException {
+        final ReverseLineIndex lines = getIndex();
+        if (!lines.ensureIndexed(line)) {
+            throw new EOFException("Reached Start of file");
+        }
+
+        final ByteBuffer buffer = lines.getFile().slice(lines.getStart(line), lines.getEnd(line));
+        return decode(buffer, buffer.position(), buffer.limit());
+    }
+
+    /**
+     * Gets a page of lines from the end of the file, in the order they appear in the file. This
+     * does not affect the lines returned by {@link #getNextLine()}, and uses the same index as
+     * {@link #getLineFromEnd(int)}.
+     *
+     * @param offset The number of lines at the end of the file to skip
+     * @param numLines The maximum number of lines to return
+     * @return The requested lines, which may be fewer than requested if the start of the file is
+     * reached
+     * @throws IOException If the file is closed or could not be mapped
+     */
+    public List<String> getLinesFromEnd(final int offset, final int numLines) throws IOException {
+        final ReverseLineIndex lines = getIndex();
+        lines.ensureIndexed(offset + numLines - 1);
+        final int last = Math.min(offset + numLines, lines.getIndexedCount()) - 1;
+
+        final List<String> result = new ArrayList<>(Math.max(last - offset + 1, 0));
+        for (int i = last; i >= offset; i--) {
+            final ByteBuffer buffer = lines.getFile().slice(lines.getStart(i), lines.getEnd(i));
+            result.add(decode(buffer, buffer.position(), buffer.limit()));
+        }
+        return result;
+    }
+
+    /**
+     * Searches the file backwards for lines containing the given text, and returns the last
+     * matching lines, starting with the one nearest the end of the file. This does not affect
+     * the lines returned by {@link #getNextLine()}.
+     *
+     * <p>The text is encoded in the file's charset and the raw bytes of the file are searched
+     * for it using the Boyer-Moore-Horspool algorithm, so only matching lines are decoded. The
+     * search is case sensitive. The file is memory mapped in the same way as for
+     * {@link #getLineFromEnd(int)}.
+     *
+     * <p>As the raw bytes are matched, a stray carriage return in the middle of a line is part
+     * of the text being searched, even though it is removed from the lines that are returned.
+     * Text that only appears in a line once such a carriage return has been removed is therefore
+     * not found. The match offset of each result is likewise an offset into the raw file.
+     *
+     * @param text The text to search for, which must not be empty or contain a line feed or
+     * carriage return
+     * @param maxMatches The maximum number of matching lines to return
+     * @return The matching lines, nearest the end of the file first
+     * @throws IOException If the file is closed or could not be mapped
+     */
+    public List<LineMatch> search(final String text, final int maxMatches) throws IOException {
+        final byte[] pattern = text.getBytes(charset);
+        if (pattern.length == 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Search text must be non-empty and a single line");
+        }
+
+        final MappedFile mapped = getIndex().getFile();
+        final int[] shifts = getShifts(pattern);
+        final List<LineMatch> result = new ArrayList<>();
+        long end = mapped.size();
+        while (result.size() < maxMatches) {
+            final long match = findLast(mapped, pattern, shifts, end);
+            if (match < 0) {
+                break;
+            }
+
+            final long lineStart = mapped.lastIndexOf((byte) '\n', 0, match) + 1;
+            long lineEnd = mapped.indexOf((byte) '\n', match + pattern.length, mapped.size());
+            if (lineEnd < 0) {
+                lineEnd = mapped.size();
+            }
+            final ByteBuffer buffer = mapped.slice(lineStart, lineEnd);
+            result.add(new LineMatch(lineStart, match,
+                    decode(buffer, buffer.position(), buffer.limit())));
+            end = lineStart - 1;
+        }
+        return result;
+    }
+
+    /**
+     * Builds the table of shifts used to search backwards for a pattern. When the byte aligned
+     * with the start of the pattern does not lead to a match, the search moves back by the
+     * distance to that byte's first occurrence in the rest of the pattern, or by the whole
+     * length of the pattern if it does not occur.
+     *
+     * @param pattern The pattern to be searched for
+     * @return The shift for each possible byte value
+     */
+    private static int[] getShifts(final byte[] pattern) {
+        final int[] shifts = new int[256];
+        Arrays.fill(shifts, pattern.length);
+        for (int i = pattern.length - 1; i > 0; i--) {
+            shifts[pattern[i] & 0xff] = i;
+        }
+        return shifts;
+    }
+
+    /**
+     * Finds the last occurrence of a pattern that ends at or before the given offset.
+     *
+     * @param mapped The file to search
+     * @param pattern The pattern to search for
+     * @param shifts The shift table for the pattern
+     * @param end The offset that matches must end by (exclusive)
+     * @return The offset of the start of the match, or -1 if there is none
+     */
+    private static long findLast(final MappedFile mapped, final byte[] pattern,
+            final int[] shifts, final long end) {
+        long offset = end - pattern.length;
+        while (offset >= 0) {
+            int i = 0;
+            while (i < pattern.length && mapped.get(offset + i) == pattern[i]) {
+                i++;
+            }
+            if (i == pattern.length) {
+                return offset;
+            }
+            offset -= shifts[mapped.get(offset) & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Gets any complete lines that have been appended to the file since the reader was created
+     * or reset, or since this method last returned them, in the order they appear in the file.
+     * A line is only returned once it has been terminated by a line feed, and each byte of the
+     * file is only read once. This does not affect the lines returned by {@link #getNextLine()}.
+     *
+     * <p>If the file is truncated, lines are read again from the start of the file. If the file
+     * is replaced, for example when a log is rotated, any remaining lines in the old file are
+     * returned (including a final unterminated line) followed by the lines in the new file; after
+     * this, {@link #getNextLine()} will not return any further lines until the reader is reset.
+     *
+     * @return The lines that have been appended, which may be empty
+     * @throws IOException If the file is closed or could not be read
+     */
+    public List<String> getAppendedLines() throws IOException {
+        if (!byteChannel.isOpen()) {
+            throw new IOException("Channel has been closed.");
+        }
+
+        final List<String> result = new ArrayList<>();
+        final Object key = getFileKey();
+        if (key != null && fileKey != null && !key.equals(fileKey)) {
+            readAppended(result);
+            if (partialLength > 0) {
+                result.add(decoder.decode(partial, 0, partialLength));
+            }
+
+            byteChannel.close();
+            byteChannel = FileChannel.open(file, StandardOpenOption.READ);
+            fileKey = key;
+            position = 0;
+            block.clear().limit(0);
+            blockStart = 0;
+            index = null;
+            appendedOffset = 0;
+            partialLength = 0;
+        } else if (byteChannel.size() < appendedOffset) {
+            index = null;
+            appendedOffset = 0;
+            partialLength = 0;
+        }
+
+        readAppended(result);
+        return result;
+    }
+
+    /**
+     * Waits for lines to be appended to the file, and returns them as described by
+     * {@link #getAppendedLines()}. The file is polled at an interval which starts short and
+     * grows while the file is idle, and is reset whenever new lines are found.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @return The lines that have been appended, which will be empty if the timeout expired
+     * @throws IOException If the file is closed or could not be read
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public List<String> awaitAppendedLines(final long timeout, final TimeUnit unit)
+            throws IOException, InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            final List<String> result = getAppendedLines();
+            if (!result.isEmpty()) {
+                pollInterval = MIN_POLL_INTERVAL;
+                return result;
             }
 
-            // We have now processed the data we read (Either added it all to the
-            // buffer, or found a newline character.)
+            final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return result;
+            }
+            Thread.sleep(Math.min(pollInterval, remaining));
+            pollInterval = Math.min(pollInterval * 2, MAX_POLL_INTERVAL);
+        }
+    }
 
-            if (fp == 0 && !gotNewLine) {
-                // This part of the loop started from the start of the file, but didn't
-                // find a new line anywhere. no more loops are possible, so Treat
-                // this as "got new line"
-                gotNewLine = true;
-                byteChannel.position(0);
+    /**
+     * Reads any content appended to the open file since it was last read, adding each complete
+     * line to the given list and keeping any incomplete line for later.
+     *
+     * @param result The list to add complete lines to
+     * @throws IOException If the file could not be read
+     */
+    private void readAppended(final List<String> result) throws IOException {
+        if (appended == null) {
+            appended = ByteBuffer.allocate(BLOCK_SIZE);
+        }
+
+        final long size = byteChannel.size();
+        final byte[] bytes = appended.array();
+        while (appendedOffset < size) {
+            appended.clear();
+            final int read = byteChannel.read(appended, appendedOffset);
+            if (read <= 0) {
+                break;
+            }
+            appendedOffset += read;
+
+            int start = 0;
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '\n') {
+                    appendPartial(bytes, start, i);
+                    result.add(decoder.decode(partial, 0, partialLength));
+                    partialLength = 0;
+                    start = i + 1;
+                }
             }
+            appendPartial(bytes, start, read);
+        }
+    }
 
-            // Do we need to continue?
-            if (gotNewLine) {
-                // We have found a new line somewhere, thus we don't need
-                // to read any more bytes, so exit the while loop!
-                keepLooping = false;
-            } else {
-                // We have not found a new line anywhere,
-                // Seek to the pre-read position, and repeat.
-                byteChannel.position(fp);
+    /**
+     * Adds bytes to the incomplete line, removing any carriage returns.
+     *
+     * @param bytes The array containing the bytes
+     * @param from The index of the first byte to add (inclusive)
+     * @param to The index of the last byte to add (exclusive)
+     */
+    private void appendPartial(final byte[] bytes, final int from, final int to) {
+        if (partial.length < partialLength + to - from) {
+            partial = Arrays.copyOf(partial, Math.max(partialLength + to - from,
+                    partial.length * 2));
+        }
+        for (int i = from; i < to; i++) {
+            if (bytes[i] != '\r') {
+                partial[partialLength++] = bytes[i];
             }
+        }
+    }
 
+    /**
+     * Gets the key that identifies the file currently at this reader's path.
+     *
+     * @return The file's key, or null if it is not available or the file does not exist
+     */
+    private Object getFileKey() {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        } catch (IOException ex) {
+            return null;
         }
+    }
 
-        // Return the data obtained.
-        final byte[] result = new byte[line.size()];
-        for (int i = 0; i < line.size(); ++i) {
-            result[i] = line.get(i);
+    /**
+     * Gets the index of lines in the file, mapping the file if it has not already been mapped.
+     * If the file has shrunk since it was mapped, it is mapped again, as accessing the part of a
+     * mapping beyond the end of a file fails with an error rather than an exception.
+     *
+     * @return The line index for the file
+     * @throws IOException If the file is closed or could not be mapped
+     */
+    private ReverseLineIndex getIndex() throws IOException {
+        if (!byteChannel.isOpen()) {
+            throw new IOException("Channel has been closed.");
+        }
+        if (index != null && byteChannel.size() < index.getFile().size()) {
+            index = null;
+        }
+        if (index == null) {
+            index = new ReverseLineIndex(MappedFile.open(file, MappedFile.DEFAULT_REGION_BITS));
         }
-        return new String(result, Charset.forName("UTF-8"));
+        return index;
+    }
+
+    /**
+     * Finds the last line feed before the specified offset, reading earlier blocks of the file
+     * as necessary.
+     *
+     * @param end The offset to search backwards from (exclusive)
+     * @return The offset of the line feed, or -1 if there is none
+     * @throws IOException If the file could not be read
+     */
+    private long findNewline(final long end) throws IOException {
+        long offset = end - 1;
+        while (offset >= 0) {
+            if (offset < blockStart || offset >= blockStart + block.limit()) {
+                readBlock(offset + 1);
+            }
+            for (int i = (int) (offset - blockStart); i >= 0; i--) {
+                if (block.get(i) == '\n') {
+                    return blockStart + i;
+                }
+            }
+            offset = blockStart - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the block of the file that ends at the specified offset.
+     *
+     * @param end The offset the block ends at (exclusive)
+     * @throws IOException If the file could not be read
+     */
+    private void readBlock(final long end) throws IOException {
+        blockStart = Math.max(0, end - BLOCK_SIZE);
+        block.clear().limit((int) (end - blockStart));
+        readFully(block, blockStart);
+        block.flip();
+    }
+
+    /**
+     * Fills the remainder of a buffer with bytes read from the file.
+     *
+     * @param buffer The buffer to fill
+     * @param offset The offset in the file to start reading from
+     * @throws IOException If the file could not be read, or is shorter than expected
+     */
+    private void readFully(final ByteBuffer buffer, final long offset) throws IOException {
+        final int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (byteChannel.read(buffer, offset + buffer.position() - start) < 0) {
+                throw new EOFException("File was truncated");
+            }
+        }
+    }
+
+    /**
+     * Decodes part of a buffer as a line, removing any carriage returns.
+     *
+     * @param buffer The buffer containing the line
+     * @param from The index of the start of the line (inclusive)
+     * @param to The index of the end of the line (exclusive)
+     * @return The decoded line
+     */
+    private String decode(final ByteBuffer buffer, final int from, final int to) {
+        if (line.length < to - from) {
+            line = new byte[Math.max(to - from, line.length * 2)];
+        }
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            final byte current = buffer.get(i);
+            if (current != '\r') {
+                line[length++] = current;
+            }
+        }
+        return decoder.decode(line, 0, length);
     }
 
     /**
@@ -203,6 +600,49 @@ public class ReverseFileReader implements AutoCloseable {
         return result;
     }
 
+    /**
+     * Reads up to the specified number of lines and adds them to the end of the given list, in
+     * the order they appear in the file. Fewer lines are added if the start of the file is
+     * reached, or if the file is closed or cannot be read.
+     *
+     * @param numLines The maximum number of lines to read
+     * @param lines The list to add the lines to
+     * @return The number of lines that were added
+     */
+    public int getLines(final int numLines, final List<String> lines) {
+        final int start = lines.size();
+        int count = 0;
+        try {
+            while (count < numLines) {
+                lines.add(getNextLine());
+                count++;
+            }
+        } catch (IOException e) {
+            // Reached the start of the file, or unable to read any further.
+        }
+        Collections.reverse(lines.subList(start, start + count));
+        return count;
+    }
+
+    /**
+     * Reads up to the specified number of lines and appends them to the given builder, in the
+     * order they appear in the file, each followed by a \n. Fewer lines are appended if the
+     * start of the file is reached, or if the file is closed or cannot be read.
+     *
+     * @param numLines The maximum number of lines to read
+     * @param builder The builder to append the lines to
+     * @return The number of lines that were appended
+     */
+    public int getLines(final int numLines, final StringBuilder builder) {
+        batch.clear();
+        final int count = getLines(numLines, batch);
+        for (String batchLine : batch) {
+            builder.append(batchLine).append('\n');
+        }
+        batch.clear();
+        return count;
+    }
+
     /**
      * Try and get x number of lines and return a \n delimited String.
      * If the file is closed, an empty string will be returned.
@@ -212,15 +652,8 @@ public class ReverseFileReader implements AutoCloseable {
      */
     public String getLinesAsString(final int numLines) {
         final StringBuilder result = new StringBuilder();
-        for (int i = 0; i < numLines; ++i) {
-            try {
-                result.insert(0, '\n');
-                result.insert(0, getNextLine());
-            } catch (IOException e) {
-                break;
-            }
-        }
-        if (result.charAt(0) == '\n') {
+        final int count = getLines(numLines, result);
+        if (count == numLines && result.length() > 0 && result.charAt(0) == '\n') {
             result.deleteCharAt(0);
         }
         return result.toString();
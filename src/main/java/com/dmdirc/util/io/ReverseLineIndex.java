@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import java.util.Arrays;
+
+/**
+ * An index of the lines in a {@link MappedFile}, counted backwards from the end of the file.
+ *
+ * <p>The index is built lazily: the file is only scanned back as far as the earliest line that
+ * has been requested, and lines that have already been indexed can be located without reading
+ * the file again. Lines are delimited by line feeds in the same way as
+ * {@link ReverseFileReader#getNextLine()}, so a file ending with a line feed has an empty last
+ * line, and a line feed at the very start of the file does not produce an empty first line.
+ */
+final class ReverseLineIndex {
+
+    /** The number of lines the index can initially hold. */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** The file being indexed. */
+    private final MappedFile file;
+    /** The offset of the line feed preceding each line, or -1 for the first line in the file. */
+    private long[] newlines = new long[INITIAL_CAPACITY];
+    /** The number of lines that have been indexed. */
+    private int count;
+    /** Whether the index has reached the start of the file. */
+    private boolean complete;
+
+    /**
+     * Creates a new index over the given file.
+     *
+     * @param file The file to index
+     */
+    ReverseLineIndex(final MappedFile file) {
+        this.file = file;
+    }
+
+    /**
+     * Gets the file being indexed.
+     *
+     * @return The file being indexed
+     */
+    MappedFile getFile() {
+        return file;
+    }
+
+    /**
+     * Ensures that the specified line has been indexed, if it exists.
+     *
+     * @param index The number of the line, counting back from 0 for the last line in the file
+     * @return True if the line exists, false if the file has fewer lines
+     */
+    boolean ensureIndexed(final int index) {
+        while (count <= index && !complete) {
+            final long end = getEnd(count);
+            if (end <= 0) {
+                complete = true;
+                break;
+            }
+            if (count == newlines.length) {
+                newlines = Arrays.copyOf(newlines, count * 2);
+            }
+            newlines[count++] = file.lastIndexOf((byte) '\n', 0, end);
+        }
+        return index < count;
+    }
+
+    /**
+     * Gets the number of lines that have been indexed so far.
+     *
+     * @return The number of indexed lines
+     */
+    int getIndexedCount() {
+        return count;
+    }
+
+    /**
+     * Gets the offset at which an indexed line starts.
+     *
+     * @param index The number of the line, counting back from 0 for the last line in the file
+     * @return The offset of the first byte of the line
+     */
+    long getStart(final int index) {
+        return newlines[index] + 1;
+    }
+
+    /**
+     * Gets the offset at which a line ends. The line must either have been indexed, or
+     * immediately follow the earliest line to have been indexed.
+     *
+     * @param index The number of the line, counting back from 0 for the last line in the file
+     * @return The offset after the last byte of the line, excluding its line feed
+     */
+    long getEnd(final int index) {
+        return index == 0 ? file.size() : newlines[index - 1];
+    }
+
+}
@@ -20,18 +20,28 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Allows reading and writing to a plain text file via a list of lines.
  */
 public class TextFile {
 
+    /**
+     * The default size of the buffer used by appenders.
+     */
+    private static final int DEFAULT_APPEND_BUFFER = 64 * 1024;
+
     /**
      * The file we're dealing with.
      */
@@ -48,6 +58,10 @@ public class TextFile {
      * The lines we've read from the file.
      */
     private List<String> lines;
+    /**
+     * Whether lines should be read from a memory mapping of the file.
+     */
+    private boolean mapped;
 
     /**
      * Creates a new instance of TextFile for the specified Path, which is to be
@@ -91,13 +105,32 @@ public class TextFile {
         return Collections.unmodifiableList(lines);
     }
 
+    /**
+     * Sets whether lines should be read from a memory mapping of the file. When enabled, reading
+     * the file only builds an index of where each line starts, and the list returned by
+     * {@link #getLines()} decodes each line when it is retrieved. This keeps memory usage low for
+     * very large files, at the cost of decoding a line again each time it is retrieved.
+     *
+     * <p>Mapping is only used for files created with a path and read with a charset that encodes
+     * line terminators as single bytes, such as UTF-8 or ISO-8859-1. Malformed input is replaced
+     * rather than causing an exception, and the file must not be truncated while its lines are in
+     * use.
+     *
+     * @param mapped True to memory map the file, false to read it into memory
+     */
+    public void setMapped(final boolean mapped) {
+        this.mapped = mapped;
+    }
+
     /**
      * Reads the contents of the file into this TextFile's line cache.
      *
      * @throws IOException If an I/O exception occurs
      */
     public void readLines() throws IOException {
-        if (path == null) {
+        if (mapped && path != null && MappedFile.isSupported(charset)) {
+            lines = MappedLineList.open(path, charset);
+        } else if (path == null) {
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, charset))) {
                 lines = reader.lines().collect(Collectors.toList());
             }
@@ -106,6 +139,84 @@ public class TextFile {
         }
     }
 
+    /**
+     * Returns a stream over the lines in the file. Unless the lines have already been cached by
+     * {@link #getLines()} or {@link #readLines()}, they are read lazily as the stream is consumed
+     * and are not retained, so a single pass over a very large file uses a constant amount of
+     * memory. Files created with an input stream can only be streamed once.
+     *
+     * <p>The returned stream should be closed once it is no longer needed, for example by using
+     * a try-with-resources statement. Any I/O exception that occurs while reading is thrown as
+     * an {@link UncheckedIOException}.
+     *
+     * @return A stream of lines in the file
+     * @throws IOException If an I/O exception occurs opening the file
+     */
+    public Stream<String> streamLines() throws IOException {
+        if (lines != null) {
+            return lines.stream();
+        }
+
+        final Reader reader = newReader();
+        final BufferedReader buffered = reader instanceof BufferedReader
+                ? (BufferedReader) reader : new BufferedReader(reader);
+        return buffered.lines().onClose(() -> {
+            try {
+                buffered.close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    /**
+     * Returns a parallel stream over the lines in the file. The file is memory mapped and split
+     * into ranges that each start and end on a line boundary, and each range is decoded
+     * independently by the common fork-join pool. Lines are not cached, and the order of the lines
+     * is preserved for operations that respect encounter order.
+     *
+     * <p>If the file was created with an input stream, or its charset does not encode line
+     * terminators as single bytes, this falls back to {@link #streamLines()} in parallel, which
+     * reads lines sequentially and only parallelises their processing. Malformed input is
+     * replaced rather than causing an exception when the file is mapped, and the file must not be
+     * truncated while the stream is in use.
+     *
+     * @return A parallel stream of lines in the file
+     * @throws IOException If an I/O exception occurs opening the file
+     */
+    public Stream<String> parallelLines() throws IOException {
+        if (path == null || !MappedFile.isSupported(charset)) {
+            return streamLines().parallel();
+        }
+
+        return StreamSupport.stream(new LineSpliterator(
+                MappedFile.open(path, MappedFile.DEFAULT_REGION_BITS), charset), true);
+    }
+
+    /**
+     * Opens a new reader over the contents of the file, decoding it using this file's charset.
+     * The caller is responsible for closing the reader.
+     *
+     * @return A reader over the contents of the file
+     * @throws IOException If an I/O exception occurs
+     */
+    protected Reader newReader() throws IOException {
+        if (path == null) {
+            return new InputStreamReader(is, charset);
+        } else {
+            return Files.newBufferedReader(path, charset);
+        }
+    }
+
+    /**
+     * Retrieves the path of this file, if it was created with one.
+     *
+     * @return The path of this file, or null if it is backed by an input stream
+     */
+    protected Path getPath() {
+        return path;
+    }
+
     /**
      * Determines if this file is writable or not.
      *
@@ -137,6 +248,43 @@ public class TextFile {
         Files.write(path, lines, charset);
     }
 
+    /**
+     * Opens an appender which adds lines to the end of this file, using a 64 KiB buffer that is
+     * written at most one second after a line is appended, without syncing to disk.
+     *
+     * @return A new appender for this file, which must be closed once it is no longer needed
+     * @throws IOException if the file could not be opened
+     * @see #openAppender(int, long, TimeUnit, boolean)
+     */
+    public TextFileAppender openAppender() throws IOException {
+        return openAppender(DEFAULT_APPEND_BUFFER, 1, TimeUnit.SECONDS, false);
+    }
+
+    /**
+     * Opens an appender which adds lines to the end of this file, creating it if necessary.
+     * Lines are encoded into a buffer which is written to the file when it is full, when the
+     * flush interval has elapsed since a line was appended, or when the appender is flushed or
+     * closed. Any lines cached by {@link #getLines()} are discarded.
+     *
+     * @param bufferSize The number of bytes to buffer before writing
+     * @param flushInterval The time to wait after a line is appended before writing it, or zero
+     * to only write when the buffer is full or flushed explicitly
+     * @param unit The unit of the flush interval
+     * @param sync Whether to sync the file to disk after each write of the buffer
+     * @return A new appender for this file, which must be closed once it is no longer needed
+     * @throws IOException if the file could not be opened
+     */
+    public TextFileAppender openAppender(final int bufferSize, final long flushInterval,
+            final TimeUnit unit, final boolean sync) throws IOException {
+        if (!isWritable()) {
+            throw new UnsupportedOperationException("Cannot write to TextFile "
+                    + "opened with an InputStream");
+        }
+
+        lines = null;
+        return new TextFileAppender(path, charset, bufferSize, flushInterval, unit, sync);
+    }
+
     /**
      * Deletes the file associated with this textfile, if there is one.
      *
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends lines to the end of a {@link TextFile}, batching them in memory so that many lines can
+ * be written with a single system call.
+ *
+ * <p>Appended lines are encoded into a direct buffer, which is written to the file when it fills
+ * up, when the configured flush interval has elapsed since the first unwritten line was appended,
+ * or when {@link #flush()} or {@link #close()} is called. If syncing is enabled, each write is
+ * followed by a single sync of the file to disk, so the cost of syncing is shared between all of
+ * the lines in the batch.
+ *
+ * <p>Appenders are safe to use from multiple threads. Characters that cannot be encoded in the
+ * file's charset are replaced.
+ */
+public class TextFileAppender implements AutoCloseable {
+
+    /** The channel used to write to the file. */
+    private final FileChannel channel;
+    /** The encoder used to encode lines. */
+    private final CharsetEncoder encoder;
+    /** The buffer holding encoded lines that have not yet been written. */
+    private final ByteBuffer buffer;
+    /** The line separator appended after each line. */
+    private final CharBuffer separator;
+    /** The time to wait after a line is appended before writing it. */
+    private final long flushInterval;
+    /** The unit of {@link #flushInterval}. */
+    private final TimeUnit unit;
+    /** Whether to sync the file to disk after each write. */
+    private final boolean sync;
+    /** The executor used to perform timed flushes, or null if they are disabled. */
+    private final ScheduledExecutorService executor;
+    /** The scheduled timed flush, if there is one. */
+    private ScheduledFuture<?> scheduled;
+    /** The exception thrown by the last timed flush, if it failed. */
+    private IOException failure;
+    /** Whether this appender has been closed. */
+    private boolean closed;
+
+    /**
+     * Creates a new appender for the file at the specified path, creating the file if it does not
+     * exist.
+     *
+     * @param path The path of the file to append to
+     * @param charset The charset to encode lines in
+     * @param bufferSize The number of bytes to buffer before writing
+     * @param flushInterval The time to wait after a line is appended before writing it, or zero
+     * to only write when the buffer is full or flushed explicitly
+     * @param unit The unit of the flush interval
+     * @param sync Whether to sync the file to disk after each write
+     * @throws IOException If the file could not be opened
+     */
+    TextFileAppender(final Path path, final Charset charset, final int bufferSize,
+            final long flushInterval, final TimeUnit unit, final boolean sync) throws IOException {
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize,
+                (int) Math.ceil(encoder.maxBytesPerChar()) * 16));
+        this.separator = CharBuffer.wrap(System.lineSeparator());
+        this.flushInterval = flushInterval;
+        this.unit = unit;
+        this.sync = sync;
+        this.executor = flushInterval > 0 ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "TextFile appender");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Appends a line to the file. The line may not be written until the buffer fills up, the
+     * flush interval elapses, or the appender is flushed.
+     *
+     * @param line The line to append, without a line separator
+     * @throws IOException If a previous write failed, or the buffer could not be written
+     */
+    public synchronized void append(final CharSequence line) throws IOException {
+        checkState();
+        encode(CharBuffer.wrap(line));
+        encode(separator.duplicate());
+        while (encoder.flush(buffer).isOverflow()) {
+            writeBuffer();
+        }
+        encoder.reset();
+
+        if (executor != null && scheduled == null && buffer.position() > 0) {
+            scheduled = executor.schedule(this::timedFlush, flushInterval, unit);
+        }
+    }
+
+    /**
+     * Writes any buffered lines to the file, and syncs the file to disk if syncing is enabled.
+     *
+     * @throws IOException If a previous write failed, or the buffer could not be written
+     */
+    public synchronized void flush() throws IOException {
+        checkState();
+        if (buffer.position() > 0) {
+            writeBuffer();
+        }
+    }
+
+    /**
+     * Flushes any buffered lines and closes the file.
+     *
+     * @throws IOException If the buffered lines could not be written, or the file could not be
+     * closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        try {
+            flush();
+        } finally {
+            closed = true;
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            channel.close();
+        }
+    }
+
+    /**
+     * Checks that this appender can still be used, rethrowing any failure from a timed flush.
+     *
+     * @throws IOException If a timed flush failed
+     */
+    private void checkState() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Appender has been closed");
+        }
+
+        if (failure != null) {
+            final IOException ex = failure;
+            failure = null;
+            throw ex;
+        }
+    }
+
+    /**
+     * Encodes characters into the buffer, writing it to the file whenever it fills up.
+     *
+     * @param chars The characters to encode
+     * @throws IOException If the buffer could not be written
+     */
+    private void encode(final CharBuffer chars) throws IOException {
+        CoderResult result = encoder.encode(chars, buffer, true);
+        while (result.isOverflow()) {
+            writeBuffer();
+            result = encoder.encode(chars, buffer, true);
+        }
+    }
+
+    /**
+     * Writes the contents of the buffer to the file and clears it, then syncs the file to disk if
+     * syncing is enabled.
+     *
+     * @throws IOException If the buffer could not be written
+     */
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            buffer.compact();
+        }
+
+        if (sync) {
+            channel.force(false);
+        }
+
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+    }
+
+    /**
+     * Writes any buffered lines after the flush interval has elapsed, recording any failure so
+     * it can be reported by the next call to the appender.
+     */
+    private synchronized void timedFlush() {
+        scheduled = null;
+        if (closed || buffer.position() == 0) {
+            return;
+        }
+
+        try {
+            writeBuffer();
+        } catch (IOException ex) {
+            failure = ex;
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util;
+
+import com.google.common.collect.Interners;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class MeasuredInternerTest {
+
+    @Test
+    public void testCountsDuplicates() {
+        final MeasuredInterner interner = new MeasuredInterner(Interners.newWeakInterner());
+        final String first = new String("test");
+        final String second = new String("test");
+
+        assertSame(first, interner.intern(first));
+        assertSame(first, interner.intern(second));
+        assertEquals(2, interner.getRequests());
+        assertEquals(1, interner.getHits());
+        assertEquals(24 + 24, interner.getBytesSaved());
+    }
+
+    @Test
+    public void testNoSavingsForUniqueStrings() {
+        final MeasuredInterner interner = new MeasuredInterner(Interners.newStrongInterner());
+        interner.intern("one");
+        interner.intern("two");
+
+        assertEquals(2, interner.getRequests());
+        assertEquals(0, interner.getHits());
+        assertEquals(0, interner.getBytesSaved());
+    }
+
+}
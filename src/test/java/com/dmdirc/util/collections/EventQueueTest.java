@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.collections;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EventQueueTest {
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final List<Integer> events = new ArrayList<>();
+
+    @Test
+    public void testEventsRunInOrder() {
+        final EventQueue queue = new EventQueue(tasks::add, 10, OverflowPolicy.BLOCK);
+        for (int i = 0; i < 5; i++) {
+            final int event = i;
+            assertTrue(queue.post(() -> events.add(event)));
+        }
+        assertEquals(1, tasks.size());
+        tasks.remove().run();
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), events);
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void testDrainIsRescheduled() {
+        final EventQueue queue = new EventQueue(tasks::add, 10, OverflowPolicy.BLOCK);
+        queue.post(() -> events.add(1));
+        tasks.remove().run();
+        queue.post(() -> events.add(2));
+        assertEquals(1, tasks.size());
+        tasks.remove().run();
+        assertEquals(Arrays.asList(1, 2), events);
+    }
+
+    @Test
+    public void testDropWhenFull() {
+        final EventQueue queue = new EventQueue(tasks::add, 2, OverflowPolicy.DROP);
+        assertTrue(queue.post(() -> events.add(1)));
+        assertTrue(queue.post(() -> events.add(2)));
+        assertFalse(queue.post(() -> events.add(3)));
+        tasks.remove().run();
+        assertEquals(Arrays.asList(1, 2), events);
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testRejectWhenFull() {
+        final EventQueue queue = new EventQueue(tasks::add, 1, OverflowPolicy.REJECT);
+        queue.post(() -> events.add(1));
+        queue.post(() -> events.add(2));
+    }
+
+    @Test
+    public void testEventNotQueuedWhenExecutorRejects() {
+        final boolean[] reject = {true};
+        final EventQueue queue = new EventQueue(task -> {
+            if (reject[0]) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(task);
+        }, 10, OverflowPolicy.BLOCK);
+
+        try {
+            queue.post(() -> events.add(1));
+            fail("Expected the event to be rejected");
+        } catch (RejectedExecutionException ex) {
+            // Expected
+        }
+
+        reject[0] = false;
+        assertTrue(queue.post(() -> events.add(2)));
+        tasks.remove().run();
+        assertEquals(Collections.singletonList(2), events);
+    }
+
+    @Test
+    public void testExceptionDoesNotStopLaterEvents() {
+        final Thread thread = Thread.currentThread();
+        final Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+        final List<Throwable> errors = new ArrayList<>();
+        thread.setUncaughtExceptionHandler((t, e) -> errors.add(e));
+        try {
+            final EventQueue queue = new EventQueue(tasks::add, 10, OverflowPolicy.BLOCK);
+            queue.post(() -> { throw new IllegalStateException(); });
+            queue.post(() -> events.add(1));
+            tasks.remove().run();
+            assertEquals(1, errors.size());
+            assertTrue(errors.get(0) instanceof IllegalStateException);
+            assertEquals(Collections.singletonList(1), events);
+        } finally {
+            thread.setUncaughtExceptionHandler(handler);
+        }
+    }
+
+    @Test
+    public void testErrorDoesNotStopLaterEvents() {
+        final Thread thread = Thread.currentThread();
+        final Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+        final List<Throwable> errors = new ArrayList<>();
+        thread.setUncaughtExceptionHandler((t, e) -> errors.add(e));
+        try {
+            final EventQueue queue = new EventQueue(tasks::add, 10, OverflowPolicy.DROP);
+            queue.post(() -> { throw new AssertionError(); });
+            queue.post(() -> events.add(1));
+            tasks.remove().run();
+            assertEquals(1, errors.size());
+            assertTrue(errors.get(0) instanceof AssertionError);
+
+            assertTrue(queue.post(() -> events.add(2)));
+            assertEquals(1, tasks.size());
+            tasks.remove().run();
+            assertEquals(Arrays.asList(1, 2), events);
+        } finally {
+            thread.setUncaughtExceptionHandler(handler);
+        }
+    }
+
+}
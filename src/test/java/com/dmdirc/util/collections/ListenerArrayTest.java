@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.collections;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ListenerArrayTest {
+
+    @Test
+    public void testAddAndRemove() {
+        final ListenerArray<String> array = new ListenerArray<>();
+        assertTrue(array.isEmpty());
+        array.add("one");
+        array.add("two");
+        array.add("one");
+        assertEquals(3, array.size());
+        assertTrue(array.remove("one"));
+        assertArrayEquals(new Object[]{"two", "one"}, array.toArray());
+        assertFalse(array.remove("three"));
+        assertTrue(array.remove("two"));
+        assertTrue(array.remove("one"));
+        assertTrue(array.isEmpty());
+    }
+
+    @Test
+    public void testContains() {
+        final ListenerArray<String> array = new ListenerArray<>();
+        array.add("one");
+        assertTrue(array.contains("one"));
+        assertFalse(array.contains("two"));
+        assertFalse(array.contains(null));
+    }
+
+    @Test
+    public void testIteratorIsSnapshot() {
+        final ListenerArray<String> array = new ListenerArray<>();
+        array.add("one");
+        array.add("two");
+        final Iterator<String> iterator = array.iterator();
+        array.remove("one");
+        array.add("three");
+        assertEquals("one", iterator.next());
+        assertEquals("two", iterator.next());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testIteratorPastEnd() {
+        new ListenerArray<String>().iterator().next();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testIteratorRemove() {
+        final ListenerArray<String> array = new ListenerArray<>();
+        array.add("one");
+        final Iterator<String> iterator = array.iterator();
+        iterator.next();
+        iterator.remove();
+    }
+
+    @Test
+    public void testRemoveIf() {
+        final ListenerArray<String> array = new ListenerArray<>();
+        array.add("one");
+        array.add("two");
+        array.add("three");
+        assertTrue(array.removeIf(listener -> listener.startsWith("t")));
+        assertArrayEquals(new Object[]{"one"}, array.toArray());
+        assertFalse(array.removeIf(listener -> listener.startsWith("t")));
+        assertTrue(array.removeIf(listener -> true));
+        assertTrue(array.isEmpty());
+    }
+
+    @Test
+    public void testRemoveAllAndRetainAll() {
+        final ListenerArray<String> array = new ListenerArray<>();
+        array.add("one");
+        array.add("two");
+        array.add("three");
+        array.add("two");
+        assertTrue(array.removeAll(Arrays.asList("two", "four")));
+        assertArrayEquals(new Object[]{"one", "three"}, array.toArray());
+        assertFalse(array.removeAll(Collections.singleton("four")));
+        assertTrue(array.retainAll(Collections.singleton("three")));
+        assertArrayEquals(new Object[]{"three"}, array.toArray());
+        assertFalse(array.retainAll(Collections.singleton("three")));
+    }
+
+    @Test
+    public void testWeakListener() {
+        final ListenerArray<String> array = new ListenerArray<>();
+        final String listener = new String("one");
+        array.addWeak(listener);
+        array.add("two");
+        assertTrue(array.contains("one"));
+        assertEquals(2, array.size());
+        assertTrue(array.remove("one"));
+        assertArrayEquals(new Object[]{"two"}, array.toArray());
+    }
+
+    @Test
+    public void testCollectedWeakListenerIsSkipped() throws InterruptedException {
+        final ListenerArray<Object> array = new ListenerArray<>();
+        Object listener = new Object();
+        final WeakReference<Object> reference = new WeakReference<>(listener);
+        array.addWeak(listener);
+        array.add("two");
+        listener = null;
+        for (int i = 0; i < 20 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+        assertEquals(1, array.size());
+        final Iterator<Object> iterator = array.iterator();
+        assertEquals("two", iterator.next());
+        assertFalse(iterator.hasNext());
+        assertArrayEquals(new Object[]{"two"}, array.toArray());
+    }
+
+    @Test
+    public void testGetEntriesRemovesCollectedListeners() throws InterruptedException {
+        final ListenerArray<Object> array = new ListenerArray<>();
+        Object listener = new Object();
+        array.add("one");
+        array.addWeak(listener);
+        final Object[] entries = array.getEntries();
+        assertEquals(2, entries.length);
+        assertEquals("one", ListenerArray.unwrap(entries[0]));
+        assertSame(listener, ListenerArray.unwrap(entries[1]));
+
+        listener = null;
+        for (int i = 0; i < 50 && array.getEntries().length > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertArrayEquals(new Object[]{"one"}, array.getEntries());
+    }
+
+    @Test
+    public void testClear() {
+        final ListenerArray<String> array = new ListenerArray<>();
+        array.add("one");
+        array.clear();
+        assertTrue(array.isEmpty());
+    }
+
+}
@@ -16,7 +16,14 @@
  */
 package com.dmdirc.util.collections;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Test;
+import org.mockito.InOrder;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -115,6 +122,35 @@ public class ListenerListTest {
         assertTrue(instance.get("String").contains(listener2));
     }
 
+    @Test
+    public void testGetMissingListeners() {
+        final ListenerList instance = new ListenerList();
+        assertSame(instance.get("Object"), instance.get("String"));
+        instance.remove(Object.class, new Object());
+        instance.remove("Object", new Object());
+        assertTrue(instance.get(Object.class).isEmpty());
+    }
+
+    @Test
+    public void testConcurrentAdd() throws InterruptedException {
+        final ListenerList instance = new ListenerList();
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    instance.add(Object.class, new Object());
+                    instance.add("Object", new Object());
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4000, instance.get(Object.class).size());
+        assertEquals(4000, instance.get("Object").size());
+    }
+
     @Test
     public void testGetCallableNoArgs() {
         final TestCallable one = mock(TestCallable.class);
@@ -159,6 +195,259 @@ public class ListenerListTest {
         verify(one).testMethod();
     }
 
+    @Test
+    public void testGetCallableCached() {
+        final ListenerList instance = new ListenerList();
+        assertSame(instance.getCallable(TestCallable.class),
+                instance.getCallable(TestCallable.class));
+        assertSame(instance.getCallable(ListObserver.class),
+                instance.getCallable(ListObserver.class));
+    }
+
+    @Test
+    public void testGetCallableIncludesLaterListeners() {
+        final ListenerList instance = new ListenerList();
+        final ListObserver callable = instance.getCallable(ListObserver.class);
+        final ListObserver one = mock(ListObserver.class);
+        instance.add(ListObserver.class, one);
+        callable.onItemsAdded(this, 1, 2);
+        callable.onItemsRemoved(this, 3, 4);
+        callable.onItemsChanged(this, 5, 6);
+        verify(one).onItemsAdded(this, 1, 2);
+        verify(one).onItemsRemoved(this, 3, 4);
+        verify(one).onItemsChanged(this, 5, 6);
+        instance.remove(ListObserver.class, one);
+        callable.onItemsAdded(this, 7, 8);
+        verify(one, never()).onItemsAdded(this, 7, 8);
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testDispatcherThrowsException() {
+        final ListObserver one = mock(ListObserver.class);
+        doThrow(new IndexOutOfBoundsException()).when(one).onItemsAdded(this, 1, 2);
+        final ListenerList instance = new ListenerList();
+        instance.add(ListObserver.class, one);
+        instance.getCallable(ListObserver.class).onItemsAdded(this, 1, 2);
+    }
+
+    @Test
+    public void testProxyPassesPrimitiveArguments() {
+        final TestListener one = mock(TestListener.class);
+        final TestListener two = mock(TestListener.class);
+        final ListenerList instance = new ListenerList();
+        instance.add(TestListener.class, one);
+        instance.add(TestListener.class, two);
+        instance.getCallable(TestListener.class).onValue(1);
+        instance.getCallable(TestListener.class).onValue(2);
+        verify(one).onValue(1);
+        verify(one).onValue(2);
+        verify(two).onValue(1);
+        verify(two).onValue(2);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testProxyThrowsUnwrappedException() {
+        final TestListener one = mock(TestListener.class);
+        doThrow(new IllegalStateException()).when(one).onValue(1);
+        final ListenerList instance = new ListenerList();
+        instance.add(TestListener.class, one);
+        instance.getCallable(TestListener.class).onValue(1);
+    }
+
+    @Test
+    public void testPostSynchronous() {
+        final ListObserver one = mock(ListObserver.class);
+        final ListenerList instance = new ListenerList();
+        instance.add(ListObserver.class, one);
+        assertTrue(instance.post(ListObserver.class, o -> o.onItemsAdded(this, 1, 2)));
+        verify(one).onItemsAdded(this, 1, 2);
+    }
+
+    @Test
+    public void testPostAsynchronous() {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+        final ListObserver one = mock(ListObserver.class);
+        final ListenerList instance = new ListenerList(tasks::add, 10, OverflowPolicy.BLOCK);
+        instance.add(ListObserver.class, one);
+        assertTrue(instance.post(ListObserver.class, o -> o.onItemsAdded(this, 1, 2)));
+        assertTrue(instance.post(ListObserver.class, o -> o.onItemsRemoved(this, 3, 4)));
+        verify(one, never()).onItemsAdded(this, 1, 2);
+        assertEquals(1, tasks.size());
+        tasks.remove().run();
+        final InOrder inOrder = inOrder(one);
+        inOrder.verify(one).onItemsAdded(this, 1, 2);
+        inOrder.verify(one).onItemsRemoved(this, 3, 4);
+    }
+
+    @Test
+    public void testPostDropsWhenFull() {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+        final ListObserver one = mock(ListObserver.class);
+        final ListenerList instance = new ListenerList(tasks::add, 1, OverflowPolicy.DROP);
+        instance.add(ListObserver.class, one);
+        assertTrue(instance.post(ListObserver.class, o -> o.onItemsAdded(this, 1, 2)));
+        assertFalse(instance.post(ListObserver.class, o -> o.onItemsAdded(this, 3, 4)));
+        tasks.remove().run();
+        verify(one).onItemsAdded(this, 1, 2);
+        verify(one, never()).onItemsAdded(this, 3, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new ListenerList(Runnable::run, 0, OverflowPolicy.BLOCK);
+    }
+
+    @Test
+    public void testMetrics() {
+        final ListObserver one = mock(ListObserver.class);
+        final ListObserver two = mock(ListObserver.class);
+        doThrow(new IndexOutOfBoundsException()).when(two).onItemsRemoved(this, 1, 2);
+        final ListenerMetrics metrics = new ListenerMetrics();
+        final ListenerList instance = new ListenerList();
+        instance.setMetrics(metrics);
+        assertSame(metrics, instance.getMetrics());
+        instance.add(ListObserver.class, one);
+        instance.add(ListObserver.class, two);
+        final ListObserver callable = instance.getCallable(ListObserver.class);
+        callable.onItemsAdded(this, 1, 2);
+        try {
+            callable.onItemsRemoved(this, 1, 2);
+            fail("Expected exception");
+        } catch (IndexOutOfBoundsException ex) {
+            // Expected
+        }
+
+        final Map<Object, ListenerStatistics> stats =
+                metrics.getListenerStatistics(ListObserver.class);
+        assertEquals(2, stats.get(one).getInvocations());
+        assertEquals(0, stats.get(one).getExceptions());
+        assertEquals(2, stats.get(two).getInvocations());
+        assertEquals(1, stats.get(two).getExceptions());
+        assertEquals(4, metrics.getTypeStatistics().get(ListObserver.class).getInvocations());
+
+        instance.remove(ListObserver.class, two);
+        assertFalse(metrics.getListenerStatistics(ListObserver.class).containsKey(two));
+    }
+
+    @Test
+    public void testMetricsWithProxy() {
+        final TestCallable one = mock(TestCallable.class);
+        when(one.testMethod()).thenThrow(new IndexOutOfBoundsException());
+        final ListenerMetrics metrics = new ListenerMetrics();
+        final ListenerList instance = new ListenerList();
+        instance.setMetrics(metrics);
+        instance.add(TestCallable.class, one);
+        final TestCallable callable = instance.getCallable(TestCallable.class);
+        callable.testMethod("test");
+        try {
+            callable.testMethod();
+            fail("Expected exception");
+        } catch (IndexOutOfBoundsException ex) {
+            // Expected
+        }
+        final ListenerStatistics stats =
+                metrics.getListenerStatistics(TestCallable.class).get(one);
+        assertEquals(2, stats.getInvocations());
+        assertEquals(1, stats.getExceptions());
+    }
+
+    @Test
+    public void testFailingSlowListenerCallback() {
+        final ListObserver one = mock(ListObserver.class);
+        final ListObserver two = mock(ListObserver.class);
+        doThrow(new IndexOutOfBoundsException()).when(one).onItemsRemoved(this, 1, 2);
+        final TestCallable three = mock(TestCallable.class);
+        final TestCallable four = mock(TestCallable.class);
+        final Thread.UncaughtExceptionHandler handler =
+                mock(Thread.UncaughtExceptionHandler.class);
+        final Thread thread = Thread.currentThread();
+        final Thread.UncaughtExceptionHandler previous = thread.getUncaughtExceptionHandler();
+        final ListenerList instance = new ListenerList();
+        instance.setMetrics(new ListenerMetrics(0, TimeUnit.NANOSECONDS,
+                (type, listener, nanos) -> {
+                    throw new IllegalStateException();
+                }));
+        instance.add(ListObserver.class, one);
+        instance.add(ListObserver.class, two);
+        instance.add(TestCallable.class, three);
+        instance.add(TestCallable.class, four);
+
+        thread.setUncaughtExceptionHandler(handler);
+        try {
+            instance.getCallable(ListObserver.class).onItemsAdded(this, 1, 2);
+            instance.getCallable(TestCallable.class).testMethod("test");
+            try {
+                instance.getCallable(ListObserver.class).onItemsRemoved(this, 1, 2);
+                fail("Expected exception");
+            } catch (IndexOutOfBoundsException ex) {
+                // Expected
+            }
+        } finally {
+            thread.setUncaughtExceptionHandler(previous);
+        }
+
+        verify(two).onItemsAdded(this, 1, 2);
+        verify(four).testMethod("test");
+        verify(handler, times(5)).uncaughtException(same(thread),
+                any(IllegalStateException.class));
+    }
+
+    @Test
+    public void testAddWeak() {
+        final ListObserver one = mock(ListObserver.class);
+        final ListenerList instance = new ListenerList();
+        instance.addWeak(ListObserver.class, one);
+        instance.addWeak("Object", one);
+        assertTrue(instance.get(ListObserver.class).contains(one));
+        assertTrue(instance.get("Object").contains(one));
+        instance.getCallable(ListObserver.class).onItemsAdded(this, 1, 2);
+        verify(one).onItemsAdded(this, 1, 2);
+        instance.remove(ListObserver.class, one);
+        assertFalse(instance.get(ListObserver.class).contains(one));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testAddWeakNull() {
+        new ListenerList().addWeak(Object.class, null);
+    }
+
+    @Test
+    public void testWeakListenerCollected() throws InterruptedException {
+        final ListenerList instance = new ListenerList();
+        instance.setMetrics(new ListenerMetrics());
+        ListObserver listener = new NullObserver();
+        final WeakReference<ListObserver> reference = new WeakReference<>(listener);
+        instance.addWeak(ListObserver.class, listener);
+        instance.getCallable(ListObserver.class).onItemsAdded(this, 1, 2);
+        listener = null;
+        for (int i = 0; i < 20 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+        assertTrue(instance.get(ListObserver.class).isEmpty());
+    }
+
+    private static class NullObserver implements ListObserver {
+
+        @Override
+        public void onItemsAdded(final Object source, final int startIndex, final int endIndex) {
+        }
+
+        @Override
+        public void onItemsRemoved(final Object source, final int startIndex, final int endIndex) {
+        }
+
+        @Override
+        public void onItemsChanged(final Object source, final int startIndex, final int endIndex) {
+        }
+
+    }
+
+    private interface TestListener {
+        void onValue(int value);
+    }
+
     private interface TestCallable {
         String testMethod();
         String testMethod(final String test);
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.collections;
+
+import com.dmdirc.util.functional.TriConsumer;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ListenerMetricsTest {
+
+    private final Object listener1 = new Object();
+    private final Object listener2 = new Object();
+
+    @Test
+    public void testRecordsListenerStatistics() {
+        final ListenerMetrics metrics = new ListenerMetrics();
+        metrics.record(Runnable.class, listener1, 10, false);
+        metrics.record(Runnable.class, listener1, 30, true);
+        metrics.record(Runnable.class, listener2, 5, false);
+        final Map<Object, ListenerStatistics> stats =
+                metrics.getListenerStatistics(Runnable.class);
+        assertEquals(2, stats.size());
+        assertEquals(new ListenerStatistics(2, 40, 30, 1), stats.get(listener1));
+        assertEquals(new ListenerStatistics(1, 5, 5, 0), stats.get(listener2));
+        assertEquals(20, stats.get(listener1).getMeanNanos());
+    }
+
+    @Test
+    public void testEqualListenersRecordedSeparately() {
+        final ListenerMetrics metrics = new ListenerMetrics();
+        final String equal1 = new String("listener");
+        final String equal2 = new String("listener");
+        metrics.record(Runnable.class, equal1, 10, false);
+        metrics.record(Runnable.class, equal2, 20, false);
+        final Map<Object, ListenerStatistics> stats =
+                metrics.getListenerStatistics(Runnable.class);
+        assertEquals(2, stats.size());
+        assertEquals(new ListenerStatistics(1, 10, 10, 0), stats.get(equal1));
+        assertEquals(new ListenerStatistics(1, 20, 20, 0), stats.get(equal2));
+    }
+
+    @Test
+    public void testRecordsTypeStatistics() {
+        final ListenerMetrics metrics = new ListenerMetrics();
+        metrics.record(Runnable.class, listener1, 10, false);
+        metrics.record(Runnable.class, listener2, 30, true);
+        metrics.record(Object.class, listener1, 5, false);
+        final Map<Class<?>, ListenerStatistics> stats = metrics.getTypeStatistics();
+        assertEquals(new ListenerStatistics(2, 40, 30, 1), stats.get(Runnable.class));
+        assertEquals(new ListenerStatistics(1, 5, 5, 0), stats.get(Object.class));
+    }
+
+    @Test
+    public void testForget() {
+        final ListenerMetrics metrics = new ListenerMetrics();
+        metrics.record(Runnable.class, listener1, 10, false);
+        metrics.record(Runnable.class, listener2, 10, false);
+        metrics.forget(Runnable.class, listener1);
+        metrics.forget(Object.class, listener1);
+        assertFalse(metrics.getListenerStatistics(Runnable.class).containsKey(listener1));
+        assertTrue(metrics.getListenerStatistics(Runnable.class).containsKey(listener2));
+        assertEquals(2, metrics.getTypeStatistics().get(Runnable.class).getInvocations());
+    }
+
+    @Test
+    public void testReset() {
+        final ListenerMetrics metrics = new ListenerMetrics();
+        metrics.record(Runnable.class, listener1, 10, false);
+        metrics.reset();
+        assertTrue(metrics.getTypeStatistics().isEmpty());
+        assertTrue(metrics.getListenerStatistics(Runnable.class).isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSlowListenerCallback() {
+        final TriConsumer<Class<?>, Object, Long> callback = mock(TriConsumer.class);
+        final ListenerMetrics metrics = new ListenerMetrics(1, TimeUnit.MILLISECONDS, callback);
+        metrics.record(Runnable.class, listener1, 999_999, false);
+        metrics.record(Runnable.class, listener2, 1_000_000, false);
+        verify(callback, never()).accept(Runnable.class, listener1, 999_999L);
+        verify(callback).accept(Runnable.class, listener2, 1_000_000L);
+    }
+
+}
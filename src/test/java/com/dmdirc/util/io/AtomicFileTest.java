@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.dmdirc.util.io;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AtomicFileTest {
+
+    private FileSystem fileSystem;
+    private Path path;
+
+    @Before
+    public void setUp() throws IOException {
+        fileSystem = Jimfs.newFileSystem(Configuration.unix().toBuilder()
+                .setAttributeViews("basic", "owner", "posix", "unix").build());
+        path = Files.createDirectory(fileSystem.getPath("/dir")).resolve("test.txt");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fileSystem.close();
+    }
+
+    @Test
+    public void testReplaceCreatesFile() throws IOException {
+        replace(path, "hello");
+        assertEquals("hello", new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReplaceLeavesNoTemporaryFiles() throws IOException {
+        replace(path, "one");
+        replace(path, "two");
+        try (Stream<Path> files = Files.list(path.getParent())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testReplaceKeepsPermissions() throws IOException {
+        replace(path, "one");
+        Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-r-----"));
+        replace(path, "two");
+        assertEquals(PosixFilePermissions.fromString("rw-r-----"),
+                Files.getPosixFilePermissions(path));
+    }
+
+    @Test
+    public void testReplaceFollowsSymbolicLinks() throws IOException {
+        final Path target = fileSystem.getPath("/target.txt");
+        Files.createSymbolicLink(path, target);
+        replace(path, "linked");
+        assertTrue(Files.isSymbolicLink(path));
+        assertEquals("linked", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testChecksummedRoundTrip() throws IOException {
+        AtomicFile.replaceChecksummed(path, out -> {
+            out.writeInt(42);
+            out.writeUTF("test");
+        });
+        try (DataInputStream in = AtomicFile.readChecksummed(path)) {
+            assertEquals(42, in.readInt());
+            assertEquals("test", in.readUTF());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testReadChecksummedMissingFile() throws IOException {
+        assertNull(AtomicFile.readChecksummed(path));
+    }
+
+    @Test
+    public void testReadChecksummedDamagedFile() throws IOException {
+        AtomicFile.replaceChecksummed(path, out -> out.writeLong(1234L));
+        final byte[] bytes = Files.readAllBytes(path);
+        bytes[3] ^= 1;
+        Files.write(path, bytes);
+        assertNull(AtomicFile.readChecksummed(path));
+    }
+
+    @Test
+    public void testReadChecksummedShortFile() throws IOException {
+        Files.write(path, new byte[]{1, 2});
+        assertNull(AtomicFile.readChecksummed(path));
+    }
+
+    private static void replace(final Path path, final String content) throws IOException {
+        final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        AtomicFile.replace(path, channel -> AtomicFile.writeFully(channel, ByteBuffer.wrap(bytes)));
+    }
+
+}
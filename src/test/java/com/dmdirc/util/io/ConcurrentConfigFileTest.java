@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentConfigFileTest {
+
+    private FileSystem fileSystem;
+    private Path path;
+    private ConcurrentConfigFile view;
+
+    @Before
+    public void setUp() throws IOException, InvalidConfigFileException {
+        fileSystem = Jimfs.newFileSystem(Configuration.unix());
+        path = fileSystem.getPath("/test.conf");
+        Files.write(path, "keysections:\n  keys\n\nkeys:\n  a=1\n\nflat:\n  x\n"
+                .getBytes(StandardCharsets.UTF_8));
+
+        final ConfigFile configFile = new ConfigFile(path);
+        configFile.read();
+        view = new ConcurrentConfigFile(configFile);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fileSystem.close();
+    }
+
+    @Test
+    public void testInitialContents() {
+        assertTrue(view.isKeyDomain("keys"));
+        assertTrue(view.isFlatDomain("flat"));
+        assertFalse(view.hasDomain("missing"));
+        assertEquals("1", view.getValue("keys", "a"));
+        assertNull(view.getValue("missing", "a"));
+        assertEquals(Arrays.asList("x"), view.getFlatDomain("flat"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotsAreImmutable() {
+        view.getKeyDomain("keys").put("b", "2");
+    }
+
+    @Test
+    public void testSnapshotsAreNotAffectedByUpdates() {
+        final Map<String, String> before = view.getKeyDomain("keys");
+        view.setValue("keys", "b", "2");
+
+        assertFalse(before.containsKey("b"));
+        assertEquals("2", view.getValue("keys", "b"));
+    }
+
+    @Test
+    public void testSetValueCreatesDomain() {
+        view.setValue("new", "key", "value");
+
+        assertTrue(view.isKeyDomain("new"));
+        assertEquals("value", view.getValue("new", "key"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetUnknownFlatDomain() {
+        view.setFlatDomain("missing", Arrays.asList("a"));
+    }
+
+    @Test
+    public void testWrite() throws IOException, InvalidConfigFileException {
+        view.setValue("keys", "b", "2");
+        view.removeValue("keys", "a");
+        view.setValue("new", "key", "value");
+        view.setFlatDomain("flat", Arrays.asList("y", "z"));
+        view.write();
+
+        final ConfigFile configFile = new ConfigFile(path);
+        configFile.read();
+        assertEquals("2", configFile.getKeyDomain("keys").get("b"));
+        assertFalse(configFile.getKeyDomain("keys").containsKey("a"));
+        assertEquals("value", configFile.getKeyDomain("new").get("key"));
+        assertEquals(Arrays.asList("y", "z"), configFile.getFlatDomain("flat"));
+    }
+
+    @Test
+    public void testDomainsReadOnDemand() throws IOException, InvalidConfigFileException {
+        Files.write(path, "keysections:\n  keys\n  broken\n\nkeys:\n  a=1\n\nbroken:\n  novalue\n"
+                .getBytes(StandardCharsets.UTF_8));
+        final ConfigFile configFile = new ConfigFile(path);
+        configFile.setLazy(true);
+        configFile.read();
+
+        final ConcurrentConfigFile lazyView = new ConcurrentConfigFile(configFile);
+        assertTrue(lazyView.isKeyDomain("broken"));
+        assertEquals("1", lazyView.getValue("keys", "a"));
+        lazyView.setValue("keys", "b", "2");
+        assertEquals("2", lazyView.getKeyDomains().get("keys").get("b"));
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    view.updateKeyDomain("counter", values -> values.merge("count", "1",
+                            (a, b) -> String.valueOf(Integer.parseInt(a) + 1)));
+                }
+                return null;
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals("2000", view.getValue("counter", "count"));
+    }
+
+}
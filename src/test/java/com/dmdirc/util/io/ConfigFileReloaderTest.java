@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConfigFileReloaderTest {
+
+    @Mock private ConfigFileChangeListener listener;
+    private FileSystem fileSystem;
+    private Path path;
+    private ConfigFile configFile;
+    private ConfigFileReloader reloader;
+
+    @Before
+    public void setUp() throws IOException, InvalidConfigFileException {
+        fileSystem = Jimfs.newFileSystem(Configuration.unix());
+        path = fileSystem.getPath("/test.conf");
+        write("keysections:\n  keys\n\nkeys:\n  a=1\n  b=2\n\nflat:\n  x\n  y\n\nold:\n  z\n", 1000);
+        configFile = new ConfigFile(path);
+        configFile.read();
+        reloader = new ConfigFileReloader(configFile);
+        reloader.addChangeListener(listener);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reloader.close();
+        fileSystem.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsInputStreams() throws IOException {
+        new ConfigFileReloader(new ConfigFile(getClass().getResourceAsStream("test2.txt")));
+    }
+
+    @Test
+    public void testUnchangedFileNotReloaded() throws IOException, InvalidConfigFileException {
+        assertFalse(reloader.checkForChanges());
+        verify(listener, never()).onDomainChanged(any(), anyString(), any(), any(), any());
+    }
+
+    @Test
+    public void testOwnWriteNotReloaded() throws IOException, InvalidConfigFileException {
+        configFile.getKeyDomain("keys").put("a", "5");
+        configFile.write();
+        configFile.getKeyDomain("keys").put("b", "6");
+
+        assertFalse(reloader.checkForChanges());
+        verify(listener, never()).onDomainChanged(any(), anyString(), any(), any(), any());
+        assertEquals("5", configFile.getKeyDomain("keys").get("a"));
+        assertEquals("6", configFile.getKeyDomain("keys").get("b"));
+    }
+
+    @Test
+    public void testKeyDomainChanges() throws IOException, InvalidConfigFileException {
+        final Map<String, String> keys = configFile.getKeyDomain("keys");
+        write("keysections:\n  keys\n\nkeys:\n  a=1\n  b=3\n  c=4\n\nflat:\n  x\n  y\n\nold:\n  z\n", 2000);
+
+        assertTrue(reloader.checkForChanges());
+        verify(listener).onDomainChanged(configFile, "keys", Collections.singleton("c"),
+                Collections.emptySet(), Collections.singleton("b"));
+        assertSame(keys, configFile.getKeyDomain("keys"));
+        assertEquals("3", keys.get("b"));
+        assertEquals("4", keys.get("c"));
+    }
+
+    @Test
+    public void testFlatDomainChanges() throws IOException, InvalidConfigFileException {
+        write("keysections:\n  keys\n\nkeys:\n  a=1\n  b=2\n\nflat:\n  x\n  w\n\nold:\n  z\n", 2000);
+
+        assertTrue(reloader.checkForChanges());
+        verify(listener).onDomainChanged(configFile, "flat", Collections.singleton("w"),
+                Collections.singleton("y"), Collections.emptySet());
+        assertEquals(Arrays.asList("x", "w"), configFile.getFlatDomain("flat"));
+    }
+
+    @Test
+    public void testDomainsAddedAndRemoved() throws IOException, InvalidConfigFileException {
+        write("keysections:\n  keys\n\nkeys:\n  a=1\n  b=2\n\nflat:\n  x\n  y\n\nnew:\n  n\n", 2000);
+
+        assertTrue(reloader.checkForChanges());
+        verify(listener).onDomainChanged(configFile, "old", Collections.emptySet(),
+                Collections.singleton("z"), Collections.emptySet());
+        verify(listener).onDomainChanged(configFile, "new", Collections.singleton("n"),
+                Collections.emptySet(), Collections.emptySet());
+        assertFalse(configFile.hasDomain("old"));
+        assertTrue(configFile.isFlatDomain("new"));
+    }
+
+    @Test
+    public void testChangesWithSameContent() throws IOException, InvalidConfigFileException {
+        write("keysections:\n  keys\n\nkeys:\n  b=2\n  a=1\n\nflat:\n  x\n  y\n\nold:\n  z\n", 2000);
+
+        assertTrue(reloader.checkForChanges());
+        verify(listener, never()).onDomainChanged(any(), anyString(), any(), any(), any());
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")),
+                configFile.getKeyDomain("keys").keySet());
+    }
+
+    @Test
+    public void testListenersInformedWithoutLock() throws IOException, InvalidConfigFileException {
+        final boolean[] locked = {true};
+        reloader.addChangeListener((file, domain, added, removed, changed) ->
+                locked[0] = Thread.holdsLock(configFile));
+        write("keysections:\n  keys\n\nkeys:\n  a=1\n  b=3\n\nflat:\n  x\n  y\n\nold:\n  z\n", 2000);
+
+        assertTrue(reloader.checkForChanges());
+        assertFalse(locked[0]);
+    }
+
+    @Test
+    public void testReloadUsesSameInterner() throws IOException, InvalidConfigFileException {
+        final Set<String> interned = new HashSet<>();
+        configFile.setInterner(value -> {
+            interned.add(value);
+            return value;
+        });
+        write("keysections:\n  keys\n\nkeys:\n  a=1\n  c=2\n\nflat:\n  x\n  y\n\nold:\n  z\n", 2000);
+
+        assertTrue(reloader.checkForChanges());
+        assertTrue(interned.contains("c"));
+    }
+
+    @Test(expected = InvalidConfigFileException.class)
+    public void testLazyReloadOfInvalidFile() throws IOException, InvalidConfigFileException {
+        configFile.setLazy(true);
+        write("keysections:\n  keys\n\nkeys:\n  novalue\n", 2000);
+
+        reloader.checkForChanges();
+    }
+
+    private void write(final String content, final long modified) throws IOException {
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(path, FileTime.fromMillis(modified));
+    }
+
+}
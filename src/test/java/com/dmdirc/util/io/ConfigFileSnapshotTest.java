@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ConfigFileSnapshotTest {
+
+    private static final byte[] HASH = ConfigFileSnapshot.hash(new byte[]{1, 2, 3});
+
+    private FileSystem fileSystem;
+    private Path path;
+    private ConfigFileSnapshot snapshot;
+
+    @Before
+    public void setUp() throws IOException {
+        fileSystem = Jimfs.newFileSystem(Configuration.unix());
+        path = fileSystem.getPath("/test.conf.snapshot");
+
+        final Map<String, Map<String, String>> keydomains = new HashMap<>();
+        final Map<String, String> keys = new HashMap<>();
+        keys.put("key", "value");
+        keys.put("other key", "value");
+        keys.put("unicode ☃", "multi\nline");
+        keydomains.put("keys", keys);
+
+        final Map<String, List<String>> flatdomains = new HashMap<>();
+        flatdomains.put("keysections", Collections.singletonList("keys"));
+        flatdomains.put("flat", Arrays.asList("one", "two", "one"));
+
+        snapshot = new ConfigFileSnapshot(Arrays.asList("keysections", "keys", "flat", "keys"),
+                keydomains, flatdomains);
+        snapshot.write(path, HASH);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fileSystem.close();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final ConfigFileSnapshot read = ConfigFileSnapshot.read(path, HASH, value -> value);
+        assertNotNull(read);
+        assertEquals(snapshot.getDomains(), read.getDomains());
+        assertEquals(snapshot.getKeyDomains(), read.getKeyDomains());
+        assertEquals(snapshot.getFlatDomains(), read.getFlatDomains());
+    }
+
+    @Test
+    public void testStringsAreShared() {
+        final ConfigFileSnapshot read = ConfigFileSnapshot.read(path, HASH, value -> value);
+        assertNotNull(read);
+        assertSame(read.getKeyDomains().get("keys").get("key"),
+                read.getKeyDomains().get("keys").get("other key"));
+    }
+
+    @Test
+    public void testDifferentHash() {
+        assertNull(ConfigFileSnapshot.read(path, ConfigFileSnapshot.hash(new byte[]{4}),
+                value -> value));
+    }
+
+    @Test
+    public void testMissingSnapshot() {
+        assertNull(ConfigFileSnapshot.read(fileSystem.getPath("/missing"), HASH, value -> value));
+    }
+
+    @Test
+    public void testCorruptSnapshot() throws IOException {
+        final byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(path, bytes);
+
+        assertNull(ConfigFileSnapshot.read(path, HASH, value -> value));
+    }
+
+    @Test
+    public void testTruncatedSnapshot() throws IOException {
+        final byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 10));
+
+        assertNull(ConfigFileSnapshot.read(path, HASH, value -> value));
+    }
+
+    @Test
+    public void testSnapshotPath() {
+        assertEquals(path, ConfigFileSnapshot.getSnapshotPath(fileSystem.getPath("/test.conf")));
+    }
+
+}
@@ -16,15 +16,21 @@
  */
 package com.dmdirc.util.io;
 
+import com.dmdirc.util.MeasuredInterner;
+
+import com.google.common.collect.Interners;
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.AccessMode;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.nio.file.spi.FileSystemProvider;
 import java.util.HashMap;
 import java.util.Map;
@@ -38,6 +44,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.when;
@@ -263,4 +270,228 @@ public class ConfigFileTest {
         file.read();
     }
 
+    @Test(expected = InvalidConfigFileException.class)
+    public void testInvalidLineFromPath() throws IOException, InvalidConfigFileException {
+        Files.write(temp, "keysections:\n  dom\ndom:\n  novalue\n".getBytes(StandardCharsets.UTF_8));
+        final ConfigFile file = new ConfigFile(temp);
+        file.read();
+    }
+
+    @Test
+    public void testMixedLineEndings() throws IOException, InvalidConfigFileException {
+        final ConfigFile file = new ConfigFile(new ByteArrayInputStream(
+                "keysections:\r\n  keys\rkeys:\n\t  a=b\r\n  c\\=d=e\\nf\nflat:\r\n  one\r\n  two"
+                        .getBytes(StandardCharsets.UTF_8)));
+        file.read();
+
+        assertTrue(file.isKeyDomain("keys"));
+        assertEquals("b", file.getKeyDomain("keys").get("a"));
+        assertEquals("e\nf", file.getKeyDomain("keys").get("c=d"));
+        assertEquals(2, file.getFlatDomain("flat").size());
+        assertEquals("one", file.getFlatDomain("flat").get(0));
+        assertEquals("two", file.getFlatDomain("flat").get(1));
+    }
+
+    @Test
+    public void testIndentedComments() throws IOException, InvalidConfigFileException {
+        final ConfigFile file = new ConfigFile(new ByteArrayInputStream(
+                "flat:\n  # a comment\n  \\# not a comment\n\n  last:\\:"
+                        .getBytes(StandardCharsets.UTF_8)));
+        file.read();
+
+        assertEquals(2, file.getFlatDomain("flat").size());
+        assertEquals("# not a comment", file.getFlatDomain("flat").get(0));
+        assertEquals("last::", file.getFlatDomain("flat").get(1));
+    }
+
+    @Test
+    public void testLazyRead() throws IOException, InvalidConfigFileException {
+        cf.setLazy(true);
+        cf.read();
+        assertTrue(cf.isKeyDomain("section one"));
+        assertTrue(cf.isFlatDomain("section alpha"));
+        assertFalse(cf.hasDomain("random domain"));
+        assertEquals(2, cf.getFlatDomain("section alpha").size());
+        assertEquals("line 2", cf.getFlatDomain("section alpha").get(1));
+        assertEquals(3, cf.getKeyDomain("section one").size());
+        assertEquals("three", cf.getKeyDomain("section one").get("3"));
+    }
+
+    @Test
+    public void testLazyWrite() throws IOException, InvalidConfigFileException {
+        cf.setLazy(true);
+        cf.read();
+        Files.copy(fileSystem.getPath("/test2.txt"), temp);
+
+        final ConfigFile config = new ConfigFile(temp);
+        config.setLazy(true);
+        config.read();
+        config.write();
+
+        final ConfigFile config2 = new ConfigFile(temp);
+        config2.read();
+        assertEquals(cf.getKeyDomains(), config2.getKeyDomains());
+        assertEquals(cf.getFlatDomain("section alpha"), config2.getFlatDomain("section alpha"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLazyInvalidLine() throws IOException, InvalidConfigFileException {
+        final ConfigFile file = new ConfigFile(new ByteArrayInputStream(
+                "keysections:\n  keys\nkeys:\n  no equals\n".getBytes(StandardCharsets.UTF_8)));
+        file.setLazy(true);
+        file.read();
+        file.getKeyDomain("keys");
+    }
+
+    @Test
+    public void testWriteCopiesUnchangedDomains() throws IOException, InvalidConfigFileException {
+        Files.write(temp, ("keysections:\n  one\n  two\n\none:\n  # keep me\n  a=b\n\n"
+                + "two:\n  # lose me\n  c=d\n").getBytes(StandardCharsets.UTF_8));
+
+        final ConfigFile config = new ConfigFile(temp);
+        config.read();
+        config.getKeyDomain("two").put("e", "f");
+        config.write();
+
+        final String written = new String(Files.readAllBytes(temp), StandardCharsets.UTF_8);
+        assertTrue(written.contains("# keep me"));
+        assertFalse(written.contains("# lose me"));
+
+        final ConfigFile config2 = new ConfigFile(temp);
+        config2.read();
+        assertEquals("b", config2.getKeyDomain("one").get("a"));
+        assertEquals("d", config2.getKeyDomain("two").get("c"));
+        assertEquals("f", config2.getKeyDomain("two").get("e"));
+    }
+
+    @Test
+    public void testWriteDetectsChangesAfterWrite() throws IOException, InvalidConfigFileException {
+        final ConfigFile config = new ConfigFile(temp);
+        final Map<String, String> data = new HashMap<>();
+        data.put("a", "b");
+        config.addDomain("test", data);
+        config.write();
+
+        data.put("c", "d");
+        config.write();
+
+        final ConfigFile config2 = new ConfigFile(temp);
+        config2.read();
+        assertEquals("d", config2.getKeyDomain("test").get("c"));
+    }
+
+    @Test
+    public void testWriteLeavesNoTemporaryFiles() throws IOException {
+        final ConfigFile config = new ConfigFile(temp);
+        config.addDomain("test", new HashMap<>());
+        config.write();
+        config.write();
+
+        try (java.util.stream.Stream<Path> files = Files.list(temp.getParent())) {
+            assertFalse(files.anyMatch(file -> file.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    public void testWriteKeepsPermissions() throws IOException {
+        try (FileSystem posixFileSystem = Jimfs.newFileSystem(Configuration.unix().toBuilder()
+                .setAttributeViews("basic", "owner", "posix", "unix").build())) {
+            final Path path = posixFileSystem.getPath("/temp.txt");
+            Files.write(path, "keysections:\n".getBytes(StandardCharsets.UTF_8));
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-r--r--"));
+            final ConfigFile config = new ConfigFile(path);
+            config.addDomain("test", new HashMap<>());
+            config.write();
+
+            assertEquals(PosixFilePermissions.fromString("rw-r--r--"),
+                    Files.getPosixFilePermissions(path));
+        }
+    }
+
+    @Test
+    public void testWriteFollowsSymbolicLinks() throws IOException, InvalidConfigFileException {
+        final Path target = fileSystem.getPath("/target.txt");
+        Files.write(target, "keysections:\n".getBytes(StandardCharsets.UTF_8));
+        Files.createSymbolicLink(temp, target);
+        final ConfigFile config = new ConfigFile(temp);
+        config.addDomain("test", new HashMap<>());
+        config.write();
+
+        assertTrue(Files.isSymbolicLink(temp));
+        final ConfigFile config2 = new ConfigFile(target);
+        config2.read();
+        assertTrue(config2.isKeyDomain("test"));
+    }
+
+    @Test
+    public void testSnapshot() throws IOException, InvalidConfigFileException {
+        Files.copy(fileSystem.getPath("/test2.txt"), temp);
+        final ConfigFile config = new ConfigFile(temp);
+        config.setSnapshot(true);
+        config.read();
+        assertTrue(Files.exists(fileSystem.getPath("/temp.txt.snapshot")));
+
+        final ConfigFile config2 = new ConfigFile(temp);
+        config2.setSnapshot(true);
+        config2.read();
+        assertEquals(config.getKeyDomains(), config2.getKeyDomains());
+        assertEquals(config.getFlatDomain("section alpha"), config2.getFlatDomain("section alpha"));
+
+        Files.write(temp, "changed:\n  value\n".getBytes(StandardCharsets.UTF_8));
+        final ConfigFile config3 = new ConfigFile(temp);
+        config3.setSnapshot(true);
+        config3.read();
+        assertFalse(config3.hasDomain("section one"));
+        assertEquals("value", config3.getFlatDomain("changed").get(0));
+
+        config3.delete();
+        assertFalse(Files.exists(fileSystem.getPath("/temp.txt.snapshot")));
+    }
+
+    @Test
+    public void testSnapshotMatchesTextAfterWrite() throws IOException,
+            InvalidConfigFileException {
+        Files.write(temp, "keysections:\n  k\n\nk:\n  a=b\n\nflat:\n  one\n"
+                .getBytes(StandardCharsets.UTF_8));
+        final ConfigFile config = new ConfigFile(temp);
+        config.setSnapshot(true);
+        config.read();
+        config.addDomain("newdom", new HashMap<>());
+        config.getFlatDomain("flat").add("  padded");
+        config.getFlatDomain("flat").add("");
+        config.write();
+
+        final ConfigFile text = new ConfigFile(temp);
+        text.read();
+        final ConfigFile first = new ConfigFile(temp);
+        first.setSnapshot(true);
+        first.read();
+        final ConfigFile second = new ConfigFile(temp);
+        second.setSnapshot(true);
+        second.read();
+
+        assertTrue(Files.exists(fileSystem.getPath("/temp.txt.snapshot")));
+        assertEquals(text.getKeyDomains(), second.getKeyDomains());
+        assertEquals(text.getFlatDomains(), second.getFlatDomains());
+        assertEquals(text.getFlatDomain("keysections"), second.getFlatDomain("keysections"));
+    }
+
+    @Test
+    public void testInterner() throws IOException, InvalidConfigFileException {
+        final MeasuredInterner interner = new MeasuredInterner(Interners.newStrongInterner());
+        final ConfigFile config = new ConfigFile(fileSystem.getPath("/test2.txt"));
+        config.setInterner(interner);
+        config.read();
+        final ConfigFile config2 = new ConfigFile(fileSystem.getPath("/test2.txt"));
+        config2.setInterner(interner);
+        config2.read();
+
+        final String key = config.getKeyDomain("section one").keySet().iterator().next();
+        final String key2 = config2.getKeyDomain("section one").keySet().stream()
+                .filter(key::equals).findFirst().get();
+        assertSame(key, key2);
+        assertTrue(interner.getHits() > 0);
+        assertTrue(interner.getBytesSaved() > 0);
+    }
+
 }
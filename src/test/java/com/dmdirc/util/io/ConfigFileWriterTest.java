@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigFileWriterTest {
+
+    private FileSystem fileSystem;
+    private Path path;
+    private ConfigFile file;
+    private ConfigFileWriter writer;
+
+    @Before
+    public void setUp() {
+        fileSystem = Jimfs.newFileSystem(Configuration.unix());
+        path = fileSystem.getPath("/test.conf");
+        file = new ConfigFile(path);
+        file.addDomain("test", new HashMap<>());
+        writer = new ConfigFileWriter(file, 1, TimeUnit.HOURS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        writer.close();
+        fileSystem.close();
+    }
+
+    @Test
+    public void testRequestsAreCoalesced() {
+        final CompletableFuture<Void> first = writer.requestWrite();
+        final CompletableFuture<Void> second = writer.requestWrite();
+
+        assertSame(first, second);
+        assertFalse(first.isDone());
+        assertFalse(Files.exists(path));
+    }
+
+    @Test
+    public void testFlushWritesPendingRequest() throws Exception {
+        final CompletableFuture<Void> future = writer.requestWrite();
+        writer.flush().get(10, TimeUnit.SECONDS);
+
+        assertTrue(future.isDone());
+        assertTrue(Files.exists(path));
+    }
+
+    @Test
+    public void testFlushWithNothingPending() {
+        assertTrue(writer.flush().isDone());
+    }
+
+    @Test
+    public void testRequestAfterWriteStartsNewWrite() throws Exception {
+        final CompletableFuture<Void> first = writer.requestWrite();
+        writer.flush().get(10, TimeUnit.SECONDS);
+
+        assertNotSame(first, writer.requestWrite());
+    }
+
+    @Test
+    public void testCloseFlushesPendingWrite() throws Exception {
+        file.getKeyDomain("test").put("key", "value");
+        final CompletableFuture<Void> future = writer.requestWrite();
+        writer.close();
+
+        assertTrue(future.isDone());
+        assertTrue(new String(Files.readAllBytes(path), StandardCharsets.UTF_8)
+                .contains("key=value"));
+    }
+
+    @Test
+    public void testWritesAfterDelay() throws Exception {
+        try (ConfigFileWriter quickWriter = new ConfigFileWriter(file, 10, TimeUnit.MILLISECONDS)) {
+            quickWriter.requestWrite().get(10, TimeUnit.SECONDS);
+            assertTrue(Files.exists(path));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRequestAfterClose() throws IOException {
+        writer.close();
+        writer.requestWrite();
+    }
+
+}
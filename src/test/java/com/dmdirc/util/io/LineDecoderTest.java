@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LineDecoderTest {
+
+    @Test
+    public void testAscii() {
+        final byte[] bytes = "xxHello, world".getBytes(StandardCharsets.US_ASCII);
+        assertEquals("Hello", new LineDecoder(StandardCharsets.UTF_8).decode(bytes, 2, 5));
+    }
+
+    @Test
+    public void testNonAscii() {
+        final String line = "\u20ac caf\u00e9";
+        final byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        assertEquals(line, new LineDecoder(StandardCharsets.UTF_8).decode(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void testHonoursCharset() {
+        final byte[] bytes = {'c', 'a', 'f', (byte) 0xe9};
+        assertEquals("caf\u00e9",
+                new LineDecoder(StandardCharsets.ISO_8859_1).decode(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void testIncompatibleCharset() {
+        final byte[] bytes = "Hello".getBytes(StandardCharsets.UTF_16BE);
+        assertEquals("Hello",
+                new LineDecoder(StandardCharsets.UTF_16BE).decode(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void testMalformedInputReplaced() {
+        final byte[] bytes = {'a', (byte) 0xff, 'b'};
+        assertEquals("a\ufffdb",
+                new LineDecoder(StandardCharsets.UTF_8).decode(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void testDirectBuffer() {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+        buffer.put("xcaf\u00e9".getBytes(StandardCharsets.UTF_8)).flip().position(1);
+        assertEquals("caf\u00e9", new LineDecoder(StandardCharsets.UTF_8).decode(buffer));
+        assertEquals(1, buffer.position());
+    }
+
+    @Test
+    public void testIsAsciiCompatible() {
+        assertTrue(LineDecoder.isAsciiCompatible(StandardCharsets.UTF_8));
+        assertTrue(LineDecoder.isAsciiCompatible(StandardCharsets.ISO_8859_1));
+        assertTrue(LineDecoder.isAsciiCompatible(Charset.forName("windows-1252")));
+        assertFalse(LineDecoder.isAsciiCompatible(StandardCharsets.UTF_16));
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LineOffsetIndexTest {
+
+    private FileSystem fileSystem;
+    private Path path;
+
+    @Before
+    public void setup() throws IOException {
+        fileSystem = Jimfs.newFileSystem(Configuration.unix());
+        path = fileSystem.getPath("/test.log");
+        write("10 one\n20 two\r\n30 three\n40 four\n50 five");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fileSystem.close();
+    }
+
+    @Test
+    public void testOffsets() throws IOException {
+        final LineOffsetIndex index = new LineOffsetIndex(path, 2, StandardCharsets.UTF_8, null);
+        index.update();
+        assertEquals(5, index.getLineCount());
+        assertEquals(0, index.getOffset(0));
+        assertEquals(7, index.getOffset(1));
+        assertEquals(15, index.getOffset(2));
+        assertEquals(32, index.getOffset(4));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOffsetPastEnd() throws IOException {
+        final LineOffsetIndex index = new LineOffsetIndex(path);
+        index.update();
+        index.getOffset(5);
+    }
+
+    @Test
+    public void testReadLines() throws IOException {
+        final LineOffsetIndex index = new LineOffsetIndex(path, 2, StandardCharsets.UTF_8, null);
+        index.update();
+        assertEquals(Arrays.asList("20 two", "30 three"), index.readLines(1, 2));
+        assertEquals(Arrays.asList("40 four", "50 five"), index.readLines(3, 10));
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws IOException {
+        final LineOffsetIndex index = new LineOffsetIndex(path, 2, StandardCharsets.UTF_8, null);
+        index.update();
+        Files.write(path, "\n60 six\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        index.update();
+        assertEquals(6, index.getLineCount());
+        assertEquals(Arrays.asList("50 five", "60 six"), index.readLines(4, 2));
+    }
+
+    @Test
+    public void testStoredIndex() throws IOException {
+        new LineOffsetIndex(path, 2, StandardCharsets.UTF_8, null).update();
+        assertTrue(Files.exists(LineOffsetIndex.getIndexPath(path)));
+
+        Files.write(path, "\n60 six\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        final LineOffsetIndex index = new LineOffsetIndex(path, 2, StandardCharsets.UTF_8, null);
+        index.update();
+        assertEquals(6, index.getLineCount());
+        assertEquals(40, index.getOffset(5));
+    }
+
+    @Test
+    public void testRebuildsAfterRewrite() throws IOException {
+        new LineOffsetIndex(path, 2, StandardCharsets.UTF_8, null).update();
+        write("a\nb\nc\nd\ne\nf\ng");
+        final LineOffsetIndex index = new LineOffsetIndex(path, 2, StandardCharsets.UTF_8, null);
+        index.update();
+        assertEquals(7, index.getLineCount());
+        assertEquals(Arrays.asList("f", "g"), index.readLines(5, 2));
+    }
+
+    @Test
+    public void testFindLineByTimestamp() throws IOException {
+        final LineOffsetIndex index = new LineOffsetIndex(path, 2, StandardCharsets.UTF_8,
+                line -> Long.parseLong(line.substring(0, line.indexOf(' '))));
+        index.update();
+        assertEquals(0, index.findLine(5));
+        assertEquals(0, index.findLine(25));
+        assertEquals(2, index.findLine(30));
+        assertEquals(2, index.findLine(100));
+    }
+
+    private void write(final String content) throws IOException {
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
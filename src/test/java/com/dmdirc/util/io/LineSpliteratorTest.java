@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class LineSpliteratorTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private FileSystem fileSystem;
+    private MappedFile file;
+
+    @Before
+    public void setup() throws IOException {
+        fileSystem = Jimfs.newFileSystem(Configuration.unix());
+        final Path path = fileSystem.getPath("/test.txt");
+        Files.write(path, "one\r\ntwo\rthree\n\nfour".getBytes(UTF8));
+        file = MappedFile.open(path, 3);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fileSystem.close();
+    }
+
+    @Test
+    public void testSequential() {
+        assertEquals(Arrays.asList("one", "two", "three", "", "four"),
+                StreamSupport.stream(new LineSpliterator(file, UTF8), false)
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testSplitsOnLineBoundary() {
+        final Spliterator<String> suffix = new LineSpliterator(file, UTF8, 1, 0, file.size());
+        final Spliterator<String> prefix = suffix.trySplit();
+        assertNotNull(prefix);
+
+        final List<String> lines = new ArrayList<>();
+        prefix.forEachRemaining(lines::add);
+        assertEquals(Arrays.asList("one", "two", "three"), lines);
+        lines.clear();
+        suffix.forEachRemaining(lines::add);
+        assertEquals(Arrays.asList("", "four"), lines);
+    }
+
+    @Test
+    public void testDoesNotSplitSmallRanges() {
+        assertNull(new LineSpliterator(file, UTF8).trySplit());
+    }
+
+    @Test
+    public void testParallel() {
+        assertEquals(Arrays.asList("one", "two", "three", "", "four"),
+                StreamSupport.stream(new LineSpliterator(file, UTF8, 1, 0, file.size()), true)
+                        .collect(Collectors.toList()));
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MappedFileTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private FileSystem fileSystem;
+    private Path path;
+
+    @Before
+    public void setup() throws IOException {
+        fileSystem = Jimfs.newFileSystem(Configuration.unix());
+        path = fileSystem.getPath("/test.txt");
+        Files.write(path, "one\r\ntwo\rthree\n".getBytes(UTF8));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fileSystem.close();
+    }
+
+    @Test
+    public void testFindTerminator() throws IOException {
+        final MappedFile file = MappedFile.open(path, 2);
+        assertEquals(3, file.findTerminator(0, file.size()));
+        assertEquals(8, file.findTerminator(5, file.size()));
+        assertEquals(-1, file.findTerminator(9, 14));
+    }
+
+    @Test
+    public void testSkipTerminator() throws IOException {
+        final MappedFile file = MappedFile.open(path, 2);
+        assertEquals(5, file.skipTerminator(3));
+        assertEquals(5, file.skipTerminator(4));
+        assertEquals(9, file.skipTerminator(8));
+    }
+
+    @Test
+    public void testIndexOf() throws IOException {
+        final MappedFile file = MappedFile.open(path, 2);
+        assertEquals(4, file.indexOf((byte) '\n', 0, file.size()));
+        assertEquals(14, file.indexOf((byte) '\n', 5, file.size()));
+        assertEquals(-1, file.indexOf((byte) '\n', 5, 14));
+    }
+
+    @Test
+    public void testLastIndexOf() throws IOException {
+        final MappedFile file = MappedFile.open(path, 2);
+        assertEquals(14, file.lastIndexOf((byte) '\n', 0, file.size()));
+        assertEquals(4, file.lastIndexOf((byte) '\n', 0, 14));
+        assertEquals(-1, file.lastIndexOf((byte) '\n', 5, 14));
+    }
+
+    @Test
+    public void testDecodeAcrossRegions() throws IOException {
+        final MappedFile file = MappedFile.open(path, 2);
+        final LineDecoder decoder = new LineDecoder(UTF8);
+        assertEquals("one", file.decode(0, 3, decoder));
+        assertEquals("three", file.decode(9, 14, decoder));
+        assertEquals("", file.decode(4, 4, decoder));
+    }
+
+    @Test
+    public void testIsSupported() {
+        assertTrue(MappedFile.isSupported(UTF8));
+        assertTrue(MappedFile.isSupported(Charset.forName("ISO-8859-1")));
+        assertFalse(MappedFile.isSupported(Charset.forName("UTF-16")));
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MappedLineListTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private FileSystem fileSystem;
+    private Path path;
+
+    @Before
+    public void setup() {
+        fileSystem = Jimfs.newFileSystem(Configuration.unix());
+        path = fileSystem.getPath("/test.txt");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fileSystem.close();
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        Files.write(path, new byte[0]);
+        assertEquals(Collections.emptyList(), MappedLineList.open(path, UTF8));
+    }
+
+    @Test
+    public void testTrailingTerminator() throws IOException {
+        Files.write(path, "one\ntwo\n".getBytes(UTF8));
+        assertEquals(Arrays.asList("one", "two"), MappedLineList.open(path, UTF8));
+    }
+
+    @Test
+    public void testNoTrailingTerminator() throws IOException {
+        Files.write(path, "one\r\ntwo".getBytes(UTF8));
+        assertEquals(Arrays.asList("one", "two"), MappedLineList.open(path, UTF8));
+    }
+
+    @Test
+    public void testLinesSpanningRegions() throws IOException {
+        Files.write(path, "caf\u00e9\r\n\u20ac uro\r\rend".getBytes(UTF8));
+        assertEquals(Arrays.asList("caf\u00e9", "\u20ac uro", "", "end"),
+                MappedLineList.open(path, UTF8, 2));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetOutOfBounds() throws IOException {
+        Files.write(path, "one\ntwo\n".getBytes(UTF8));
+        MappedLineList.open(path, UTF8).get(2);
+    }
+
+}
@@ -17,10 +17,24 @@
 
 package com.dmdirc.util.io;
 
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -162,4 +176,232 @@ public class ReverseFileReaderTest {
         }
     }
 
+    @Test
+    public void testCharset() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+            final Path path = fileSystem.getPath("/test.txt");
+            Files.write(path, "caf\u00e9\nna\u00efve".getBytes(StandardCharsets.ISO_8859_1));
+            try (ReverseFileReader reader = new ReverseFileReader(path,
+                    StandardCharsets.ISO_8859_1)) {
+                assertEquals("na\u00efve", reader.getNextLine());
+                assertEquals("caf\u00e9", reader.getNextLine());
+            }
+        }
+    }
+
+    @Test
+    public void testLineSpanningBlocks() throws IOException {
+        final StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            longLine.append((char) ('a' + i % 26));
+        }
+
+        try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+            final Path path = fileSystem.getPath("/test.txt");
+            Files.write(path, ("first\r\n" + longLine + "\r\nlast").getBytes(
+                    StandardCharsets.UTF_8));
+            try (ReverseFileReader reader = new ReverseFileReader(path)) {
+                assertEquals("last", reader.getNextLine());
+                assertEquals(longLine.toString(), reader.getNextLine());
+                assertEquals("first", reader.getNextLine());
+            }
+        }
+    }
+
+    @Test
+    public void testGetLineFromEnd() throws IOException, URISyntaxException {
+        try (ReverseFileReader reader = new ReverseFileReader(
+                Paths.get(getClass().getResource("test1.txt").toURI()))) {
+            assertEquals("Line 5", reader.getLineFromEnd(2));
+            assertEquals("Line 7", reader.getLineFromEnd(0));
+            assertEquals("Line 1", reader.getLineFromEnd(6));
+            assertEquals("Line 7", reader.getNextLine());
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void testGetLineFromEndPastStart() throws IOException, URISyntaxException {
+        try (ReverseFileReader reader = new ReverseFileReader(
+                Paths.get(getClass().getResource("test1.txt").toURI()))) {
+            reader.getLineFromEnd(7);
+        }
+    }
+
+    @Test
+    public void testGetLinesFromEnd() throws IOException, URISyntaxException {
+        try (ReverseFileReader reader = new ReverseFileReader(
+                Paths.get(getClass().getResource("test1.txt").toURI()))) {
+            assertEquals(Arrays.asList("Line 4", "Line 5", "Line 6"),
+                    reader.getLinesFromEnd(1, 3));
+            assertEquals(Arrays.asList("Line 1", "Line 2", "Line 3"),
+                    reader.getLinesFromEnd(4, 5));
+            assertEquals(Collections.emptyList(), reader.getLinesFromEnd(7, 3));
+        }
+    }
+
+    @Test
+    public void testGetAppendedLines() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+            final Path path = fileSystem.getPath("/test.txt");
+            Files.write(path, "one\ntwo\n".getBytes(StandardCharsets.UTF_8));
+            try (ReverseFileReader reader = new ReverseFileReader(path)) {
+                assertEquals(Collections.emptyList(), reader.getAppendedLines());
+
+                Files.write(path, "three\r\nfo".getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.APPEND);
+                assertEquals(Collections.singletonList("three"), reader.getAppendedLines());
+
+                Files.write(path, "ur\n".getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.APPEND);
+                assertEquals(Collections.singletonList("four"), reader.getAppendedLines());
+                assertEquals("", reader.getNextLine());
+                assertEquals("two", reader.getNextLine());
+            }
+        }
+    }
+
+    @Test
+    public void testGetAppendedLinesAfterTruncation() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+            final Path path = fileSystem.getPath("/test.txt");
+            Files.write(path, "one\ntwo\n".getBytes(StandardCharsets.UTF_8));
+            try (ReverseFileReader reader = new ReverseFileReader(path)) {
+                Files.write(path, "new\n".getBytes(StandardCharsets.UTF_8));
+                assertEquals(Collections.singletonList("new"), reader.getAppendedLines());
+            }
+        }
+    }
+
+    @Test
+    public void testGetLineFromEndAfterTruncation() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+            final Path path = fileSystem.getPath("/test.txt");
+            Files.write(path, "one\ntwo\nthree\n".getBytes(StandardCharsets.UTF_8));
+            try (ReverseFileReader reader = new ReverseFileReader(path)) {
+                assertEquals("three", reader.getLineFromEnd(1));
+                Files.write(path, "new\n".getBytes(StandardCharsets.UTF_8));
+                assertEquals(Collections.singletonList("new"), reader.getAppendedLines());
+                assertEquals("new", reader.getLineFromEnd(1));
+                Files.write(path, "a\n".getBytes(StandardCharsets.UTF_8));
+                assertEquals(Collections.singletonList("a"), reader.getLinesFromEnd(1, 2));
+            }
+        }
+    }
+
+    @Test
+    public void testGetAppendedLinesAfterRotation() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+            final Path path = fileSystem.getPath("/test.txt");
+            Files.write(path, "one\n".getBytes(StandardCharsets.UTF_8));
+            try (ReverseFileReader reader = new ReverseFileReader(path)) {
+                Files.write(path, "two\nthree".getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.APPEND);
+                Files.move(path, fileSystem.getPath("/test.txt.1"));
+                Files.write(path, "four\n".getBytes(StandardCharsets.UTF_8));
+                assertEquals(Arrays.asList("two", "three", "four"), reader.getAppendedLines());
+            }
+        }
+    }
+
+    @Test
+    public void testAwaitAppendedLinesTimesOut() throws IOException, URISyntaxException,
+            InterruptedException {
+        try (ReverseFileReader reader = new ReverseFileReader(
+                Paths.get(getClass().getResource("test1.txt").toURI()))) {
+            assertEquals(Collections.emptyList(),
+                    reader.awaitAppendedLines(50, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void testGetLinesIntoList() throws IOException, URISyntaxException {
+        try (ReverseFileReader reader = new ReverseFileReader(
+                Paths.get(getClass().getResource("test1.txt").toURI()))) {
+            final List<String> lines = new ArrayList<>(Collections.singletonList("existing"));
+            assertEquals(3, reader.getLines(3, lines));
+            assertEquals(Arrays.asList("existing", "Line 5", "Line 6", "Line 7"), lines);
+            assertEquals(4, reader.getLines(10, lines));
+            assertEquals("Line 1", lines.get(4));
+        }
+    }
+
+    @Test
+    public void testGetLinesIntoBuilder() throws IOException, URISyntaxException {
+        try (ReverseFileReader reader = new ReverseFileReader(
+                Paths.get(getClass().getResource("test1.txt").toURI()))) {
+            final StringBuilder builder = new StringBuilder();
+            assertEquals(2, reader.getLines(2, builder));
+            assertEquals("Line 6\nLine 7\n", builder.toString());
+        }
+    }
+
+    @Test
+    public void testGetLinesAsStringNoLines() throws IOException, URISyntaxException {
+        try (ReverseFileReader reader = new ReverseFileReader(
+                Paths.get(getClass().getResource("test1.txt").toURI()))) {
+            assertEquals("", reader.getLinesAsString(0));
+        }
+    }
+
+    @Test
+    public void testResetSeesAppendedContent() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+            final Path path = fileSystem.getPath("/test.txt");
+            Files.write(path, "one\ntwo".getBytes(StandardCharsets.UTF_8));
+            try (ReverseFileReader reader = new ReverseFileReader(path)) {
+                assertEquals("two", reader.getNextLine());
+                Files.write(path, "\nthree".getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.APPEND);
+                reader.reset();
+                assertEquals("three", reader.getNextLine());
+            }
+        }
+    }
+
+    @Test
+    public void testResetAfterRotation() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+            final Path path = fileSystem.getPath("/test.txt");
+            Files.write(path, "one\ntwo".getBytes(StandardCharsets.UTF_8));
+            try (ReverseFileReader reader = new ReverseFileReader(path)) {
+                Files.move(path, fileSystem.getPath("/test.txt.1"));
+                Files.write(path, "three".getBytes(StandardCharsets.UTF_8));
+                reader.reset();
+                assertEquals("three", reader.getNextLine());
+            }
+        }
+    }
+
+    @Test
+    public void testSearch() throws IOException {
+        try (FileSystem fileSystem = Jimfs.newFileSystem(Configuration.unix())) {
+            final Path path = fileSystem.getPath("/test.txt");
+            Files.write(path, "<alice> hi\r\n<bob> hi alice\n<carol> hey\n<alice> bye"
+                    .getBytes(StandardCharsets.UTF_8));
+            try (ReverseFileReader reader = new ReverseFileReader(path)) {
+                assertEquals(Arrays.asList(new LineMatch(39, 40, "<alice> bye"),
+                        new LineMatch(12, 21, "<bob> hi alice")), reader.search("alice", 2));
+                assertEquals(3, reader.search("alice", 10).size());
+                assertEquals(Collections.emptyList(), reader.search("dave", 10));
+                assertEquals("<alice> bye", reader.getNextLine());
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSearchEmpty() throws IOException, URISyntaxException {
+        try (ReverseFileReader reader = new ReverseFileReader(
+                Paths.get(getClass().getResource("test1.txt").toURI()))) {
+            reader.search("", 1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSearchCarriageReturn() throws IOException, URISyntaxException {
+        try (ReverseFileReader reader = new ReverseFileReader(
+                Paths.get(getClass().getResource("test1.txt").toURI()))) {
+            reader.search("a\rb", 1);
+        }
+    }
+
 }
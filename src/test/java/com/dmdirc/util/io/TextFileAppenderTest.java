@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2006-2017 DMDirc Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS
+ * OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.dmdirc.util.io;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TextFileAppenderTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private FileSystem fileSystem;
+    private Path path;
+    private TextFile file;
+
+    @Before
+    public void setup() {
+        fileSystem = Jimfs.newFileSystem(Configuration.unix());
+        path = fileSystem.getPath("/test.txt");
+        file = new TextFile(path, UTF8);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fileSystem.close();
+    }
+
+    @Test
+    public void testBuffersUntilFlush() throws IOException {
+        try (TextFileAppender appender = file.openAppender(1024, 0, TimeUnit.SECONDS, false)) {
+            appender.append("one");
+            appender.append("two");
+            assertTrue(Files.exists(path));
+            assertEquals(0, Files.size(path));
+
+            appender.flush();
+            assertEquals(Arrays.asList("one", "two"), Files.readAllLines(path));
+        }
+    }
+
+    @Test
+    public void testCloseFlushes() throws IOException {
+        try (TextFileAppender appender = file.openAppender(1024, 0, TimeUnit.SECONDS, true)) {
+            appender.append("one");
+        }
+        assertEquals(Collections.singletonList("one"), Files.readAllLines(path));
+    }
+
+    @Test
+    public void testWritesWhenBufferFull() throws IOException {
+        try (TextFileAppender appender = file.openAppender(64, 0, TimeUnit.SECONDS, false)) {
+            for (int i = 0; i < 20; i++) {
+                appender.append("line " + i);
+            }
+            assertFalse(Files.size(path) == 0);
+        }
+        assertEquals(20, Files.readAllLines(path).size());
+        assertEquals("line 19", Files.readAllLines(path).get(19));
+    }
+
+    @Test
+    public void testAppendsToExistingFile() throws IOException {
+        file.writeLines(Collections.singletonList("existing"));
+        try (TextFileAppender appender = file.openAppender()) {
+            appender.append("new");
+        }
+        assertEquals(Arrays.asList("existing", "new"), file.getLines());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAppendAfterClose() throws IOException {
+        final TextFileAppender appender = file.openAppender();
+        appender.close();
+        appender.append("one");
+    }
+
+}
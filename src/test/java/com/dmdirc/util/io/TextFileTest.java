@@ -19,7 +19,9 @@ package com.dmdirc.util.io;
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.nio.file.AccessDeniedException;
@@ -30,6 +32,8 @@ import java.nio.file.Path;
 import java.nio.file.spi.FileSystemProvider;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.After;
 import org.junit.Before;
@@ -42,6 +46,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -133,4 +139,63 @@ public class TextFileTest {
         assertEquals("Line 1", lines.get(0));
     }
 
+    @Test
+    public void testMappedLines() throws IOException {
+        final TextFile file = new TextFile(test1, Charset.forName("UTF-8"));
+        file.setMapped(true);
+        final List<String> lines = file.getLines();
+        assertEquals(7, lines.size());
+        assertEquals("Line 1", lines.get(0));
+        assertEquals(Files.readAllLines(test1), lines);
+    }
+
+    @Test
+    public void testMappedLinesMixedLineEndings() throws IOException {
+        Files.write(temp, "one\r\ntwo\rthree\n\nfour\r\n".getBytes("UTF-8"));
+        final TextFile file = new TextFile(temp, Charset.forName("UTF-8"));
+        file.setMapped(true);
+        assertEquals(Arrays.asList("one", "two", "three", "", "four"), file.getLines());
+    }
+
+    @Test
+    public void testStreamLines() throws IOException {
+        final TextFile file = new TextFile(test1, Charset.forName("UTF-8"));
+        try (Stream<String> lines = file.streamLines()) {
+            assertEquals(Files.readAllLines(test1), lines.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testStreamLines_Stream() throws IOException {
+        final InputStream stream = spy(new ByteArrayInputStream(Files.readAllBytes(test1)));
+        final TextFile file = new TextFile(stream, Charset.forName("UTF-8"));
+        try (Stream<String> lines = file.streamLines()) {
+            assertEquals(7, lines.count());
+        }
+        verify(stream).close();
+    }
+
+    @Test
+    public void testParallelLines() throws IOException {
+        final TextFile file = new TextFile(test1, Charset.forName("UTF-8"));
+        try (Stream<String> lines = file.parallelLines()) {
+            assertTrue(lines.isParallel());
+            assertEquals(Files.readAllLines(test1), lines.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testParallelLines_Stream() throws IOException {
+        final TextFile file = new TextFile(Files.newInputStream(test1), Charset.forName("UTF-8"));
+        try (Stream<String> lines = file.parallelLines()) {
+            assertEquals(Files.readAllLines(test1), lines.collect(Collectors.toList()));
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testIllegalAppend() throws IOException {
+        final TextFile file = new TextFile(ro, Charset.forName("UTF-8"));
+        file.openAppender();
+    }
+
 }